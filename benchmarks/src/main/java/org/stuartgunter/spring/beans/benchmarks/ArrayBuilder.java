@@ -0,0 +1,18 @@
+package org.stuartgunter.spring.beans.benchmarks;
+
+/**
+ * A builder whose value is converted to a mutable array, which must not be shared by the objects built.
+ */
+public class ArrayBuilder {
+
+    private String[] values;
+
+    public ArrayBuilder withValues(String[] values) {
+        this.values = values;
+        return this;
+    }
+
+    public String[] build() {
+        return this.values;
+    }
+}
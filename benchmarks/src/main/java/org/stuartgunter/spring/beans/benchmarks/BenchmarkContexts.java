@@ -0,0 +1,103 @@
+package org.stuartgunter.spring.beans.benchmarks;
+
+/**
+ * Generates Spring XML configuration for the benchmarks.
+ */
+final class BenchmarkContexts {
+
+    private static final String HEADER =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<beans xmlns=\"http://www.springframework.org/schema/beans\"\n" +
+            "       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+            "       xmlns:sg=\"http://www.stuartgunter.org/schema/spring\"\n" +
+            "       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans.xsd\n" +
+            "                           http://www.stuartgunter.org/schema/spring http://www.stuartgunter.org/schema/spring/spring.xsd\">\n" +
+            "    <import resource=\"classpath:base-context.xml\"/>\n";
+
+    private static final String FOOTER = "</beans>\n";
+
+    private BenchmarkContexts() {
+    }
+
+    /**
+     * Returns a context with the given number of singleton builder-factory definitions, cycling through the property
+     * style, overloaded and fluent method style builders.
+     */
+    static String builderFactories(int count) {
+        StringBuilder xml = new StringBuilder(HEADER);
+        for (int i = 0; i < count; i++) {
+            switch (i % 3) {
+                case 0:
+                    appendPropertyStyle(xml, i);
+                    break;
+                case 1:
+                    appendOverloadedStyle(xml, i, null);
+                    break;
+                default:
+                    appendMethodStyle(xml, i);
+                    break;
+            }
+        }
+        return xml.append(FOOTER).toString();
+    }
+
+    /**
+     * Returns a context with the given number of singleton builder-factory definitions, like
+     * {@link #builderFactories(int)}, but where every fourth definition passes another builder-factory bean to the
+     * overloaded {@code usingBody} method. Each of those refers to the first definition of its block of a thousand, so
+     * the references are spread over the whole context without forming long chains.
+     */
+    static String mixedBuilderFactories(int count) {
+        StringBuilder xml = new StringBuilder(HEADER);
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+                case 0:
+                    appendPropertyStyle(xml, i);
+                    break;
+                case 1:
+                    appendOverloadedStyle(xml, i, null);
+                    break;
+                case 2:
+                    appendMethodStyle(xml, i);
+                    break;
+                default:
+                    appendOverloadedStyle(xml, i, "bean" + (i / 1000 * 1000));
+                    break;
+            }
+        }
+        return xml.append(FOOTER).toString();
+    }
+
+    private static void appendPropertyStyle(StringBuilder xml, int i) {
+        xml.append("    <sg:builder-factory id=\"bean").append(i).append("\"\n")
+           .append("        builder-class=\"org.stuartgunter.spring.beans.factory.xml.TestStringBuilder\">\n")
+           .append("        <sg:with name=\"prefix\" value=\"${someKey}\"/>\n")
+           .append("        <sg:with name=\"body\" value=\" World ").append(i).append("\"/>\n")
+           .append("        <sg:with name=\"suffix\" ref=\"exclamation\"/>\n")
+           .append("        <sg:with name=\"uppercase\" value=\"true\"/>\n")
+           .append("    </sg:builder-factory>\n");
+    }
+
+    private static void appendOverloadedStyle(StringBuilder xml, int i, String bodyRef) {
+        xml.append("    <sg:builder-factory id=\"bean").append(i).append("\"\n")
+           .append("        builder-class=\"org.stuartgunter.spring.beans.factory.xml.TestSpecialStringBuilder\"\n")
+           .append("        build-method=\"construct\" method-prefix=\"using\">\n")
+           .append("        <sg:with name=\"prefix\" value=\"${someKey}\"/>\n");
+        if (bodyRef == null) {
+            xml.append("        <sg:with name=\"body\" value=\" World ").append(i).append("\"/>\n");
+        } else {
+            xml.append("        <sg:with name=\"body\" ref=\"").append(bodyRef).append("\"/>\n");
+        }
+        xml.append("        <sg:with name=\"suffix\" ref=\"exclamation\"/>\n")
+           .append("    </sg:builder-factory>\n");
+    }
+
+    private static void appendMethodStyle(StringBuilder xml, int i) {
+        xml.append("    <sg:builder-factory id=\"bean").append(i).append("\"\n")
+           .append("        builder-class=\"java.lang.StringBuilder\" fluent-style=\"METHODS\" build-method=\"toString\">\n")
+           .append("        <sg:with name=\"append\" value=\"${someKey}\"/>\n")
+           .append("        <sg:with name=\"append\" value=\" World ").append(i).append("\"/>\n")
+           .append("        <sg:with name=\"append\" ref=\"exclamation\"/>\n")
+           .append("    </sg:builder-factory>\n");
+    }
+}
@@ -0,0 +1,60 @@
+package org.stuartgunter.spring.beans.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@code getBean} on prototype builder-factory beans, using the same builders as the functional tests.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuilderFactoryBeanBenchmark {
+
+    private GenericXmlApplicationContext applicationContext;
+
+    @Setup
+    public void setUp() {
+        applicationContext = new GenericXmlApplicationContext("classpath:prototype-benchmark-context.xml");
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public Object getStringBuilderBean() {
+        return applicationContext.getBean("stringBuilderBean");
+    }
+
+    @Benchmark
+    public Object getSpecialStringBuilderBean() {
+        return applicationContext.getBean("specialStringBuilderBean");
+    }
+
+    @Benchmark
+    public Object getFluentMethodBean() {
+        return applicationContext.getBean("fluentMethodBean");
+    }
+
+    @Benchmark
+    public Object getDateTimeBean() {
+        return applicationContext.getBean("dateTimeBean");
+    }
+}
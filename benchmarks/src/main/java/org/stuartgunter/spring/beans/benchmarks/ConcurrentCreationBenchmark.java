@@ -0,0 +1,62 @@
+package org.stuartgunter.spring.beans.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@code getBean} on prototype builder-factory beans from many threads sharing one context, to expose
+ * contention on the creation path. Run with JMH's {@code -t} option, or via {@link ScalingRunner} to compare the
+ * throughput across thread counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentCreationBenchmark {
+
+    private GenericXmlApplicationContext applicationContext;
+
+    @Setup
+    public void setUp() {
+        applicationContext = new GenericXmlApplicationContext("classpath:prototype-benchmark-context.xml");
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public Object getStringBuilderBean() {
+        return applicationContext.getBean("stringBuilderBean");
+    }
+
+    @Benchmark
+    public Object getDateTimeBean() {
+        return applicationContext.getBean("dateTimeBean");
+    }
+
+    @Benchmark
+    public Object getArrayBean() {
+        return applicationContext.getBean("arrayBean");
+    }
+
+    @Benchmark
+    public Object getPooledBean() {
+        return applicationContext.getBean("pooledBean");
+    }
+}
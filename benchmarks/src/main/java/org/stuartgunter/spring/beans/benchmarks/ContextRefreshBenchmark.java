@@ -0,0 +1,49 @@
+package org.stuartgunter.spring.beans.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the parsing and refresh of a context that contains the given number of builder-factory definitions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContextRefreshBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int definitions;
+
+    private byte[] configuration;
+
+    @Setup
+    public void setUp() {
+        configuration = BenchmarkContexts.builderFactories(definitions).getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public GenericXmlApplicationContext refresh() {
+        GenericXmlApplicationContext applicationContext = new GenericXmlApplicationContext();
+        applicationContext.load(new ByteArrayResource(configuration));
+        applicationContext.refresh();
+        applicationContext.close();
+        return applicationContext;
+    }
+}
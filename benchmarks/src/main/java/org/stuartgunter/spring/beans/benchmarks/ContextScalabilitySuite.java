@@ -0,0 +1,265 @@
+package org.stuartgunter.spring.beans.benchmarks;
+
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * <p>Macro benchmark of how the library scales with the size of the configuration. For each size, a synthetic context
+ * with that many builder-factory definitions (see {@link BenchmarkContexts#mixedBuilderFactories(int)}) is parsed,
+ * refreshed and queried several times, and the following metrics are recorded:</p>
+ * <ul>
+ *     <li>{@code parseMillis}: the time taken to load the definitions</li>
+ *     <li>{@code refreshMillis}: the time taken to refresh the context, i.e. to create all singletons</li>
+ *     <li>{@code firstGetBeanMillis}: the time taken by the first {@code getBean} call for a lazily initialised bean
+ *     of the refreshed context, i.e. the time taken to create a single bean once the context is large</li>
+ *     <li>{@code retainedBytes}: the heap retained by the refreshed context</li>
+ * </ul>
+ *
+ * <p>Times are the fastest of all iterations. The results are written as CSV ({@code definitions,metric,value}), and
+ * are checked against the thresholds in {@code scalability-thresholds.properties} (or the given thresholds file): the
+ * per-definition cost of each metric may only grow by a bounded factor from the smallest to the largest size, and, if
+ * a baseline (the CSV of a previous run) is given, no metric may exceed its baseline by more than a bounded fraction.
+ * The suite exits with a non-zero status if any threshold is exceeded.</p>
+ *
+ * <pre>
+ * java -Xmx4g -cp benchmarks/target/benchmarks.jar org.stuartgunter.spring.beans.benchmarks.ContextScalabilitySuite \
+ *     [--sizes 1000,10000,100000] [--iterations 3] [--output scalability.csv] [--baseline previous.csv] \
+ *     [--thresholds thresholds.properties]
+ * </pre>
+ */
+public final class ContextScalabilitySuite {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final List<String> METRICS =
+            Arrays.asList("parseMillis", "refreshMillis", "firstGetBeanMillis", "retainedBytes");
+
+    private ContextScalabilitySuite() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int iterations = Integer.parseInt(option(options, "iterations", "3"));
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (String size : option(options, "sizes", "1000,10000,100000").split(",")) {
+            sizes.add(Integer.valueOf(size.trim()));
+        }
+        Properties thresholds = loadThresholds(options.get("thresholds"));
+
+        // warm up the parser and the builder introspection, so that the smallest size is not penalised
+        measure(sizes.get(0), 1);
+
+        Map<Integer, Map<String, Double>> results = new LinkedHashMap<Integer, Map<String, Double>>();
+        for (int size : sizes) {
+            results.put(size, measure(size, iterations));
+        }
+
+        File output = new File(option(options, "output", "scalability.csv"));
+        writeResults(results, output);
+        System.out.printf("%n%-12s %-20s %16s %20s%n", "Definitions", "Metric", "Value", "Per definition");
+        for (Map.Entry<Integer, Map<String, Double>> result : results.entrySet()) {
+            for (Map.Entry<String, Double> metric : result.getValue().entrySet()) {
+                System.out.printf("%-12d %-20s %16.3f %20.4f%n", result.getKey(), metric.getKey(),
+                        metric.getValue(), metric.getValue() / result.getKey());
+            }
+        }
+        System.out.println("Results written to " + output);
+
+        List<String> regressions = checkGrowth(results, thresholds);
+        if (options.containsKey("baseline")) {
+            regressions.addAll(checkBaseline(results, readResults(new File(options.get("baseline"))), thresholds));
+        }
+        for (String regression : regressions) {
+            System.err.println("REGRESSION: " + regression);
+        }
+        System.exit(regressions.isEmpty() ? 0 : 1);
+    }
+
+    private static Map<String, Double> measure(int definitions, int iterations) throws InterruptedException {
+        byte[] configuration = BenchmarkContexts.mixedBuilderFactories(definitions).getBytes(UTF_8);
+        String lastBeanName = "bean" + (definitions - 1);
+
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        for (int i = 0; i < iterations; i++) {
+            long heapBefore = usedHeap();
+
+            long start = System.nanoTime();
+            GenericApplicationContext applicationContext = new GenericApplicationContext();
+            new XmlBeanDefinitionReader(applicationContext).loadBeanDefinitions(new ByteArrayResource(configuration));
+            long parsed = System.nanoTime();
+            // no other bean refers to the last one, so it is only created by the first getBean call
+            applicationContext.getBeanDefinition(lastBeanName).setLazyInit(true);
+            applicationContext.refresh();
+            long refreshed = System.nanoTime();
+            applicationContext.getBean(lastBeanName);
+            long gotBean = System.nanoTime();
+
+            long retainedBytes = usedHeap() - heapBefore;
+            applicationContext.close();
+
+            recordMinimum(metrics, "parseMillis", (parsed - start) / 1e6);
+            recordMinimum(metrics, "refreshMillis", (refreshed - parsed) / 1e6);
+            recordMinimum(metrics, "firstGetBeanMillis", (gotBean - refreshed) / 1e6);
+            metrics.put("retainedBytes", (double) retainedBytes);
+        }
+        return metrics;
+    }
+
+    private static void recordMinimum(Map<String, Double> metrics, String metric, double value) {
+        Double previous = metrics.get(metric);
+        metrics.put(metric, (previous == null) ? value : Math.min(previous, value));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // collect until the heap stops shrinking, as a single System.gc() may not collect everything
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(20);
+            long current = memory.getHeapMemoryUsage().getUsed();
+            if (current >= used) {
+                break;
+            }
+            used = current;
+        }
+        return used;
+    }
+
+    /**
+     * Checks that the per-definition cost of each metric grows by at most {@code <metric>.maxGrowth} from the smallest
+     * to the largest size. A factor of 1 means perfectly linear scaling.
+     */
+    private static List<String> checkGrowth(Map<Integer, Map<String, Double>> results, Properties thresholds) {
+        List<String> regressions = new ArrayList<String>();
+        List<Integer> sizes = new ArrayList<Integer>(results.keySet());
+        int smallest = sizes.get(0);
+        int largest = sizes.get(sizes.size() - 1);
+        if (smallest == largest) {
+            return regressions;
+        }
+        for (String metric : METRICS) {
+            String maxGrowth = thresholds.getProperty(metric + ".maxGrowth");
+            if (maxGrowth == null) {
+                continue;
+            }
+            double smallestCost = results.get(smallest).get(metric) / smallest;
+            double largestCost = results.get(largest).get(metric) / largest;
+            double growth = largestCost / smallestCost;
+            if (growth > Double.parseDouble(maxGrowth)) {
+                regressions.add(String.format("%s per definition grew %.2fx from %d to %d definitions (max %s)",
+                        metric, growth, smallest, largest, maxGrowth));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Checks that no metric exceeds its baseline by more than {@code <metric>.tolerance}, e.g. 0.25 for 25%.
+     */
+    private static List<String> checkBaseline(Map<Integer, Map<String, Double>> results,
+                                              Map<Integer, Map<String, Double>> baseline,
+                                              Properties thresholds) {
+        List<String> regressions = new ArrayList<String>();
+        for (Map.Entry<Integer, Map<String, Double>> result : results.entrySet()) {
+            Map<String, Double> baselineMetrics = baseline.get(result.getKey());
+            if (baselineMetrics == null) {
+                continue;
+            }
+            for (Map.Entry<String, Double> metric : result.getValue().entrySet()) {
+                Double baselineValue = baselineMetrics.get(metric.getKey());
+                String tolerance = thresholds.getProperty(metric.getKey() + ".tolerance");
+                if (baselineValue == null || tolerance == null) {
+                    continue;
+                }
+                double limit = baselineValue * (1 + Double.parseDouble(tolerance));
+                if (metric.getValue() > limit) {
+                    regressions.add(String.format("%s with %d definitions is %.3f, baseline %.3f (tolerance %s)",
+                            metric.getKey(), result.getKey(), metric.getValue(), baselineValue, tolerance));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private static void writeResults(Map<Integer, Map<String, Double>> results, File file) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            writer.println("definitions,metric,value");
+            for (Map.Entry<Integer, Map<String, Double>> result : results.entrySet()) {
+                for (Map.Entry<String, Double> metric : result.getValue().entrySet()) {
+                    writer.println(result.getKey() + "," + metric.getKey() + "," + metric.getValue());
+                }
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private static Map<Integer, Map<String, Double>> readResults(File file) throws IOException {
+        Map<Integer, Map<String, Double>> results = new LinkedHashMap<Integer, Map<String, Double>>();
+        List<String> lines = Files.readAllLines(file.toPath(), UTF_8);
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",");
+            if (fields.length != 3) {
+                continue;
+            }
+            Integer definitions = Integer.valueOf(fields[0]);
+            if (!results.containsKey(definitions)) {
+                results.put(definitions, new LinkedHashMap<String, Double>());
+            }
+            results.get(definitions).put(fields[1], Double.valueOf(fields[2]));
+        }
+        return results;
+    }
+
+    private static Properties loadThresholds(String file) throws IOException {
+        Properties thresholds = new Properties();
+        InputStream input = (file != null)
+                ? new FileInputStream(file)
+                : ContextScalabilitySuite.class.getResourceAsStream("/scalability-thresholds.properties");
+        try {
+            thresholds.load(input);
+        }
+        finally {
+            input.close();
+        }
+        return thresholds;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --<option> <value> pairs, but got " + Arrays.asList(args));
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return (value != null) ? value : defaultValue;
+    }
+}
@@ -0,0 +1,84 @@
+package org.stuartgunter.spring.beans.benchmarks;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.FluentBeanWrapper;
+import org.springframework.beans.FluentStyle;
+import org.springframework.beans.InvocationEngine;
+import org.stuartgunter.spring.beans.factory.xml.TestSpecialStringBuilder;
+import org.stuartgunter.spring.beans.factory.xml.TestStringBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the individual operations of {@link FluentBeanWrapper}, for each {@link InvocationEngine}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FluentBeanWrapperBenchmark {
+
+    @Param({"METHOD_HANDLE", "REFLECTION"})
+    public InvocationEngine invocationEngine;
+
+    private FluentBeanWrapper stringBuilderWrapper;
+    private FluentBeanWrapper specialStringBuilderWrapper;
+    private FluentBeanWrapper dateTimeWrapper;
+
+    @Setup
+    public void setUp() {
+        stringBuilderWrapper = new FluentBeanWrapper(
+                new TestStringBuilder(), "with", "build", FluentStyle.PROPERTIES, invocationEngine);
+        stringBuilderWrapper.setPropertyValue("prefix", "Hello");
+        stringBuilderWrapper.setPropertyValue("body", " World");
+        stringBuilderWrapper.setPropertyValue("suffix", "!");
+
+        specialStringBuilderWrapper = new FluentBeanWrapper(
+                new TestSpecialStringBuilder(), "using", "construct", FluentStyle.PROPERTIES, invocationEngine);
+
+        dateTimeWrapper = new FluentBeanWrapper(
+                new DateTime(0), "with", "toDateTime", FluentStyle.PROPERTIES, invocationEngine);
+    }
+
+    @Benchmark
+    public FluentBeanWrapper construct() {
+        return new FluentBeanWrapper(
+                new TestStringBuilder(), "with", "build", FluentStyle.PROPERTIES, invocationEngine);
+    }
+
+    @Benchmark
+    public FluentBeanWrapper setNonOverloadedProperty() {
+        stringBuilderWrapper.setPropertyValue("body", " World");
+        return stringBuilderWrapper;
+    }
+
+    @Benchmark
+    public FluentBeanWrapper setOverloadedProperty() {
+        specialStringBuilderWrapper.setPropertyValue("body", " World");
+        return specialStringBuilderWrapper;
+    }
+
+    @Benchmark
+    public FluentBeanWrapper setConvertedPrimitiveProperty() {
+        dateTimeWrapper.setPropertyValue("year", "2012");
+        return dateTimeWrapper;
+    }
+
+    @Benchmark
+    public Object build() throws Exception {
+        return stringBuilderWrapper.build();
+    }
+}
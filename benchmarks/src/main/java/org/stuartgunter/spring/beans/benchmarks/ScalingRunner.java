@@ -0,0 +1,64 @@
+package org.stuartgunter.spring.beans.benchmarks;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the {@link ConcurrentCreationBenchmark} with 1, 2, 4, ... threads up to the number of available processors, and
+ * reports each benchmark's throughput per thread count along with its scaling efficiency, i.e. the throughput relative
+ * to the single-threaded throughput multiplied by the thread count. Contention-free creation scales at close to 100%.
+ * Accepts the standard JMH command line options.
+ */
+public final class ScalingRunner {
+
+    private ScalingRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int threads = 1; threads < Runtime.getRuntime().availableProcessors(); threads <<= 1) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(Runtime.getRuntime().availableProcessors());
+
+        Map<String, Map<Integer, Double>> scores = new LinkedHashMap<String, Map<Integer, Double>>();
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .parent(new CommandLineOptions(args))
+                    .include(ConcurrentCreationBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            for (RunResult result : results) {
+                String benchmark = result.getParams().getBenchmark();
+                benchmark = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+                if (!scores.containsKey(benchmark)) {
+                    scores.put(benchmark, new LinkedHashMap<Integer, Double>());
+                }
+                scores.get(benchmark).put(threads, result.getPrimaryResult().getScore());
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-50s %8s %14s %11s%n", "Benchmark", "Threads", "Score (ops/us)", "Efficiency");
+        for (Map.Entry<String, Map<Integer, Double>> benchmark : scores.entrySet()) {
+            Double baseline = benchmark.getValue().get(1);
+            for (Map.Entry<Integer, Double> score : benchmark.getValue().entrySet()) {
+                double efficiency = (baseline != null)
+                        ? 100.0 * score.getValue() / (baseline * score.getKey())
+                        : Double.NaN;
+                System.out.printf("%-50s %8d %14.3f %10.1f%%%n",
+                        benchmark.getKey(), score.getKey(), score.getValue(), efficiency);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.springframework.beans;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Invokes the build method (i.e. a method with an arity of 0) on a target builder. Instances are bound to their method
+ * once and may be shared between threads.
+ *
+ * @see InvocationEngine
+ */
+public abstract class BuildMethodInvoker {
+
+    /**
+     * Invokes the build method on the given target.
+     *
+     * @param target the builder on which to invoke the method
+     * @return the object constructed by the builder
+     * @throws IllegalAccessException if the method is not accessible
+     * @throws InvocationTargetException if the method itself threw an exception
+     */
+    public abstract Object invoke(Object target) throws IllegalAccessException, InvocationTargetException;
+}
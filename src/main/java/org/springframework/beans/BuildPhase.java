@@ -0,0 +1,34 @@
+package org.springframework.beans;
+
+/**
+ * The phases of constructing objects through a {@link FluentBuildPlan}, for which {@link BuildStatistics} are
+ * recorded.
+ */
+public enum BuildPhase {
+
+    /**
+     * Resolving the builder's fluent methods and binding them to invokers, once when the plan is compiled.
+     */
+    METHOD_DISCOVERY,
+
+    /**
+     * Converting values to the parameter types of the fluent methods. Literal values are converted once when the plan
+     * is compiled; bean references are converted when they are resolved.
+     */
+    VALUE_CONVERSION,
+
+    /**
+     * Resolving bean references from the bean factory.
+     */
+    REFERENCE_RESOLUTION,
+
+    /**
+     * Invoking the builder's fluent methods.
+     */
+    FLUENT_INVOCATION,
+
+    /**
+     * Instantiating (or reusing) the builder and invoking the build method, which occurs once per object built.
+     */
+    BUILD
+}
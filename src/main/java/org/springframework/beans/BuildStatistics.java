@@ -0,0 +1,117 @@
+package org.springframework.beans;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Counts and timings of the {@link BuildPhase phases} of a {@link FluentBuildPlan}, which can be exposed as a
+ * standard MBean. A plan only records statistics if it was compiled with an instance of this class; otherwise its
+ * builds do not take any timings at all.</p>
+ *
+ * <p>All times are in nanoseconds, and are totals across all occurrences of the phase.</p>
+ *
+ * <p>Recording is lock-free and rarely contends between threads: each thread records into one of a number of stripes
+ * (chosen by its id), which are only summed when the statistics are read. Reads are therefore not atomic snapshots
+ * across phases.</p>
+ */
+public class BuildStatistics implements BuildStatisticsMBean {
+
+    private static final int PHASE_COUNT = BuildPhase.values().length;
+
+    // each stripe holds the count and time of every phase, interleaved
+    private final AtomicLongArray[] stripes;
+
+    public BuildStatistics() {
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new AtomicLongArray(PHASE_COUNT * 2);
+        }
+    }
+
+    /**
+     * Records a single occurrence of the given phase.
+     *
+     * @param phase the phase
+     * @param nanos the elapsed time, in nanoseconds
+     */
+    public void record(BuildPhase phase, long nanos) {
+        AtomicLongArray stripe = this.stripes[(int) Thread.currentThread().getId() & (this.stripes.length - 1)];
+        stripe.incrementAndGet(phase.ordinal() * 2);
+        stripe.addAndGet(phase.ordinal() * 2 + 1, nanos);
+    }
+
+    public long getCount(BuildPhase phase) {
+        return sum(phase.ordinal() * 2);
+    }
+
+    public long getTime(BuildPhase phase) {
+        return sum(phase.ordinal() * 2 + 1);
+    }
+
+    private long sum(int index) {
+        long sum = 0L;
+        for (AtomicLongArray stripe : this.stripes) {
+            sum += stripe.get(index);
+        }
+        return sum;
+    }
+
+    @Override
+    public long getMethodDiscoveryCount() {
+        return getCount(BuildPhase.METHOD_DISCOVERY);
+    }
+
+    @Override
+    public long getMethodDiscoveryTime() {
+        return getTime(BuildPhase.METHOD_DISCOVERY);
+    }
+
+    @Override
+    public long getValueConversionCount() {
+        return getCount(BuildPhase.VALUE_CONVERSION);
+    }
+
+    @Override
+    public long getValueConversionTime() {
+        return getTime(BuildPhase.VALUE_CONVERSION);
+    }
+
+    @Override
+    public long getReferenceResolutionCount() {
+        return getCount(BuildPhase.REFERENCE_RESOLUTION);
+    }
+
+    @Override
+    public long getReferenceResolutionTime() {
+        return getTime(BuildPhase.REFERENCE_RESOLUTION);
+    }
+
+    @Override
+    public long getFluentInvocationCount() {
+        return getCount(BuildPhase.FLUENT_INVOCATION);
+    }
+
+    @Override
+    public long getFluentInvocationTime() {
+        return getTime(BuildPhase.FLUENT_INVOCATION);
+    }
+
+    @Override
+    public long getBuildCount() {
+        return getCount(BuildPhase.BUILD);
+    }
+
+    @Override
+    public long getBuildTime() {
+        return getTime(BuildPhase.BUILD);
+    }
+
+    @Override
+    public void reset() {
+        for (AtomicLongArray stripe : this.stripes) {
+            for (int i = 0; i < stripe.length(); i++) {
+                stripe.set(i, 0L);
+            }
+        }
+    }
+}
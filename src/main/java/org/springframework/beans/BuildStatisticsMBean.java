@@ -0,0 +1,29 @@
+package org.springframework.beans;
+
+/**
+ * The management interface of {@link BuildStatistics}. All times are in nanoseconds.
+ */
+public interface BuildStatisticsMBean {
+
+    long getMethodDiscoveryCount();
+
+    long getMethodDiscoveryTime();
+
+    long getValueConversionCount();
+
+    long getValueConversionTime();
+
+    long getReferenceResolutionCount();
+
+    long getReferenceResolutionTime();
+
+    long getFluentInvocationCount();
+
+    long getFluentInvocationTime();
+
+    long getBuildCount();
+
+    long getBuildTime();
+
+    void reset();
+}
@@ -0,0 +1,89 @@
+package org.springframework.beans;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Internal class that holds a bounded number of idle builders of a {@link FluentBuildPlan} for reuse. Builders are
+ * reset when they are released, rather than when they are acquired, so that idle builders do not retain references to
+ * the values of the previous build.</p>
+ *
+ * <p>The pool is lock-free and does not allocate: each slot holds at most one idle builder, and threads start their
+ * search at a slot derived from their id, so that a thread mostly reuses the same builder. When the pool is full, a
+ * released builder is simply discarded.</p>
+ *
+ * <p>Pooling is only valid for mutable builders. If a fluent method returns a different instance than the builder it
+ * was invoked on, or the build method returns the builder itself, the builder is immutable (or cannot safely be reset)
+ * and the pool disables itself for good.</p>
+ */
+final class BuilderPool {
+
+    private final BuildMethodInvoker resetMethodInvoker;
+    private final AtomicReferenceArray<Object> slots;
+
+    private volatile boolean disabled;
+
+    BuilderPool(BuildMethodInvoker resetMethodInvoker, int size) {
+        this.resetMethodInvoker = resetMethodInvoker;
+        this.slots = new AtomicReferenceArray<Object>(size);
+    }
+
+    /**
+     * Returns an idle builder, or {@code null} if there is none.
+     */
+    Object acquire() {
+        if (this.disabled) {
+            return null;
+        }
+        int size = this.slots.length();
+        int start = firstSlot(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            if (this.slots.get(slot) != null) {
+                Object builder = this.slots.getAndSet(slot, null);
+                if (builder != null) {
+                    return builder;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resets the builder and returns it to the pool, unless the build revealed that the builder is immutable.
+     *
+     * @param builder the builder that was acquired or instantiated for the build
+     * @param target the builder returned by the last fluent method
+     * @param result the object returned by the build method
+     */
+    void release(Object builder, Object target, Object result)
+            throws IllegalAccessException, InvocationTargetException {
+        if (this.disabled) {
+            return;
+        }
+        if (target != builder || result == builder) {
+            this.disabled = true;
+            for (int i = 0; i < this.slots.length(); i++) {
+                this.slots.set(i, null);
+            }
+            return;
+        }
+
+        this.resetMethodInvoker.invoke(builder);
+        int size = this.slots.length();
+        int start = firstSlot(size);
+        for (int i = 0; i < size; i++) {
+            if (this.slots.compareAndSet((start + i) % size, null, builder)) {
+                return;
+            }
+        }
+    }
+
+    boolean isDisabled() {
+        return this.disabled;
+    }
+
+    private static int firstSlot(int size) {
+        return (int) (Thread.currentThread().getId() % size);
+    }
+}
@@ -1,8 +1,5 @@
 package org.springframework.beans;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
-import org.apache.commons.lang3.reflect.MethodUtils;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.config.RuntimeBeanReference;
@@ -11,13 +8,11 @@ import org.springframework.core.convert.ConversionException;
 import org.springframework.core.convert.ConverterNotFoundException;
 import org.springframework.core.convert.TypeDescriptor;
 import org.springframework.util.Assert;
-import org.springframework.util.ReflectionUtils;
-import org.springframework.util.StringUtils;
+import org.springframework.util.ClassUtils;
 
 import java.beans.PropertyChangeEvent;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.List;
 
 /**
  * <p>{@link PropertyAccessor} implementation that accesses 'fluent' methods on the target bean.
@@ -32,12 +27,11 @@ import java.util.List;
 public class FluentBeanWrapper extends AbstractPropertyAccessor implements BeanFactoryAware {
 
     private Object target;
-    private final FluentStyle fluentStyle;
-    private final String fluentMethodPrefix;
     private final String buildMethod;
+    private final InvocationEngine invocationEngine;
 
-    // this is a multimap to handle overloaded methods
-    private final ListMultimap<String, Method> properties = ArrayListMultimap.create();
+    // shared across all wrappers for the same builder class, prefix and style
+    private final FluentIntrospectionResults fluentIntrospectionResults;
 
     private final TypeConverterDelegate typeConverterDelegate;
 
@@ -47,59 +41,28 @@ public class FluentBeanWrapper extends AbstractPropertyAccessor implements BeanF
                              final String fluentMethodPrefix,
                              final String buildMethod,
                              final FluentStyle fluentStyle) {
+        this(target, fluentMethodPrefix, buildMethod, fluentStyle, InvocationEngine.DEFAULT);
+    }
+
+    public FluentBeanWrapper(final Object target,
+                             final String fluentMethodPrefix,
+                             final String buildMethod,
+                             final FluentStyle fluentStyle,
+                             final InvocationEngine invocationEngine) {
         Assert.notNull(target, "Target object must not be null");
         Assert.notNull(fluentMethodPrefix, "Fluent method prefix must not be null");
         Assert.notNull(buildMethod, "Build method must not be null");
         Assert.notNull(fluentStyle, "Fluent style must not be null");
+        Assert.notNull(invocationEngine, "Invocation engine must not be null");
 
         this.target = target;
-        this.fluentStyle = fluentStyle;
-        this.fluentMethodPrefix = fluentMethodPrefix;
         this.buildMethod = buildMethod;
+        this.invocationEngine = invocationEngine;
         this.typeConverterDelegate = new TypeConverterDelegate(this, target);
         registerDefaultEditors();
 
-        if (fluentStyle == FluentStyle.PROPERTIES) {
-            registerFluentProperties(fluentMethodPrefix);
-        } else {
-            registerFluentMethods();
-        }
-    }
-
-    private void registerFluentMethods() {
-        ReflectionUtils.doWithMethods(target.getClass(),
-                new ReflectionUtils.MethodCallback() {
-                    @Override
-                    public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
-                        properties.put(method.getName(), method);
-                    }
-                },
-                new ReflectionUtils.MethodFilter() {
-                    @Override
-                    public boolean matches(Method method) {
-                        return method.getParameterTypes().length == 1
-                                && target.getClass().isAssignableFrom(method.getReturnType());
-                    }
-                });
-    }
-
-    private void registerFluentProperties(final String fluentMethodPrefix) {
-        ReflectionUtils.doWithMethods(target.getClass(),
-                new ReflectionUtils.MethodCallback() {
-                    @Override
-                    public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
-                        String propertyName = method.getName().substring(fluentMethodPrefix.length());
-                        properties.put(StringUtils.uncapitalize(propertyName), method);
-                    }
-                },
-                new ReflectionUtils.MethodFilter() {
-                    @Override
-                    public boolean matches(Method method) {
-                        return method.getName().startsWith(fluentMethodPrefix)
-                                && method.getParameterTypes().length == 1
-                                && target.getClass().isAssignableFrom(method.getReturnType());
-                    }
-                });
+        this.fluentIntrospectionResults =
+                FluentIntrospectionResults.forClass(target.getClass(), fluentMethodPrefix, fluentStyle);
     }
 
     @Override
@@ -109,7 +72,7 @@ public class FluentBeanWrapper extends AbstractPropertyAccessor implements BeanF
 
     @Override
     public boolean isWritableProperty(String propertyName) throws BeansException {
-        return this.properties.containsKey(propertyName);
+        return this.fluentIntrospectionResults.hasFluentMethod(propertyName);
     }
 
     @Override
@@ -144,9 +107,13 @@ public class FluentBeanWrapper extends AbstractPropertyAccessor implements BeanF
             newValue = beanFactory.getBean(beanName);
         }
         try {
-            Object convertedValue = this.typeConverterDelegate.convertIfNecessary(propertyName, null, newValue,
-                    paramType, new TypeDescriptor(new MethodParameter(method, 0)));
-            this.target = method.invoke(this.target, convertedValue);
+            // values of the required type need no conversion, and hence no editor lookup
+            Object convertedValue = ClassUtils.isAssignableValue(paramType, newValue)
+                    ? newValue
+                    : this.typeConverterDelegate.convertIfNecessary(propertyName, null, newValue,
+                            paramType, new TypeDescriptor(new MethodParameter(method, 0)));
+            this.target = this.fluentIntrospectionResults.getFluentMethodInvoker(method, this.invocationEngine)
+                    .invoke(this.target, convertedValue);
         }
         catch (ConverterNotFoundException ex) {
             PropertyChangeEvent pce = new PropertyChangeEvent(this.target, propertyName, null, newValue);
@@ -169,21 +136,18 @@ public class FluentBeanWrapper extends AbstractPropertyAccessor implements BeanF
     }
 
     public Object build() throws Exception {
-        return BeanUtils.findMethod(target.getClass(), buildMethod).invoke(target);
+        BuildMethodInvoker invoker = (this.target.getClass() == this.fluentIntrospectionResults.getBuilderClass())
+                ? this.fluentIntrospectionResults.getBuildMethodInvoker(this.buildMethod, this.invocationEngine)
+                : null;
+        if (invoker == null) {
+            // the builder returned an instance of a different class, so fall back to looking up its build method
+            return BeanUtils.findMethod(this.target.getClass(), this.buildMethod).invoke(this.target);
+        }
+        return invoker.invoke(this.target);
     }
 
     private Method getFluentMethod(String propertyName, Class<?> type) {
-        List<Method> methods = properties.get(propertyName);
-        if (methods.isEmpty()) {
-            return null;
-        } else if (methods.size() == 1) {
-            return methods.get(0);
-        } else {
-            String methodName = (fluentStyle == FluentStyle.METHODS)
-                    ? propertyName
-                    : fluentMethodPrefix + StringUtils.capitalize(propertyName);
-            return MethodUtils.getMatchingAccessibleMethod(target.getClass(), methodName, new Class[] {type});
-        }
+        return this.fluentIntrospectionResults.getFluentMethod(propertyName, type);
     }
 
     @Override
@@ -0,0 +1,1142 @@
+package org.springframework.beans;
+
+import com.google.common.collect.ImmutableSet;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.core.MethodParameter;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.beans.PropertyChangeEvent;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A precompiled plan for constructing an object through a builder. All of the work that does not depend on the
+ * builder instance is done once when the plan is compiled: the fluent methods are resolved and bound to invokers,
+ * literal values are converted to the methods' parameter types, and the build method is bound.</p>
+ *
+ * <p>Literal values are converted with the bean factory's type converter, so that its conversion service and custom
+ * editors apply, and only if they are not already of the parameter type. A literal whose converted value is mutable
+ * is copied (if it is an array of immutable elements) or converted afresh for every build, so that the objects built
+ * do not share it.</p>
+ *
+ * <p>Each call to {@link #build()} then only instantiates the builder, replays the steps and invokes the build method.
+ * References to other beans are resolved on first use; references to singletons are cached thereafter, whereas
+ * references to beans of any other scope are resolved afresh for every build.</p>
+ *
+ * <p>Plans are immutable once compiled (apart from the cached singleton references) and can be shared between
+ * threads. Concurrent builds only share immutable or lock-free state: type converters, which are not thread-safe,
+ * are taken from a lock-free pool rather than created for every conversion, and there are no synchronized
+ * sections.</p>
+ *
+ * <p>A plan for a mutable builder that can be reset may {@link #withBuilderPool(String, int) pool} its builders, in
+ * which case a build only allocates a builder when no idle one is available.</p>
+ *
+ * <p>A plan for immutable objects may {@link #withInterning() intern} them, in which case a build only runs the builder
+ * if no equal object has been built before, by any interning plan.</p>
+ *
+ * <p>A plan with {@link FluentReplicaValue replica values} cannot build anything itself. Instead, a plan is derived
+ * {@link #forReplica(int) for each replica}, which only converts the replica's own values and shares all other
+ * steps.</p>
+ *
+ * <p>A plan may also be derived {@link #withResolvedReferences() with its references resolved}, so that it can build
+ * on another thread without accessing the bean factory.</p>
+ *
+ * <p>A plan compiled with {@link BuildStatistics} records the counts and timings of each {@link BuildPhase}. Plans
+ * compiled without statistics do not take any timings.</p>
+ */
+public final class FluentBuildPlan {
+
+    /**
+     * Immutable types (besides primitives, wrappers and enums) that literal values are commonly converted to.
+     */
+    private static final Set<Class<?>> IMMUTABLE_TYPES = ImmutableSet.<Class<?>>of(
+            String.class, BigDecimal.class, BigInteger.class, Locale.class, Currency.class, UUID.class,
+            URI.class, URL.class, File.class, Pattern.class);
+
+    private final FluentIntrospectionResults introspectionResults;
+    private final InvocationEngine invocationEngine;
+    private final Constructor<?> builderConstructor;
+    private final Step[] steps;
+    private final String buildMethod;
+    private final BuildMethodInvoker buildMethodInvoker;
+    private final BuilderPool builderPool;
+    private final BuildStatistics statistics;
+    private final InternCache internCache;
+
+    private FluentBuildPlan(FluentIntrospectionResults introspectionResults, InvocationEngine invocationEngine,
+                            Constructor<?> builderConstructor, Step[] steps, String buildMethod,
+                            BuildMethodInvoker buildMethodInvoker, BuilderPool builderPool,
+                            BuildStatistics statistics, InternCache internCache) {
+        this.introspectionResults = introspectionResults;
+        this.invocationEngine = invocationEngine;
+        this.builderConstructor = builderConstructor;
+        this.steps = steps;
+        this.buildMethod = buildMethod;
+        this.buildMethodInvoker = buildMethodInvoker;
+        this.builderPool = builderPool;
+        this.statistics = statistics;
+        this.internCache = internCache;
+    }
+
+    /**
+     * Compiles a plan for the given builder.
+     *
+     * @param builderClass the type of builder, which must provide a default constructor
+     * @param fluentMethodPrefix the prefix of the fluent methods (only relevant for {@link FluentStyle#PROPERTIES})
+     * @param buildMethod the name of the build method
+     * @param fluentStyle the fluent style adopted by the builder
+     * @param invocationEngine the engine used to invoke the builder methods
+     * @param steps the steps to apply to the builder, in order; each value is either a literal, a
+     * {@link RuntimeBeanReference}, a {@link FluentValueStream}, a {@link FluentReplicaValue} or a nested plan, whose
+     * object is built inline on every build
+     * @param beanFactory the bean factory used to resolve bean references
+     */
+    public static FluentBuildPlan compile(Class<?> builderClass,
+                                          String fluentMethodPrefix,
+                                          String buildMethod,
+                                          FluentStyle fluentStyle,
+                                          InvocationEngine invocationEngine,
+                                          FluentSteps steps,
+                                          BeanFactory beanFactory) throws BeansException {
+        return compile(builderClass, fluentMethodPrefix, buildMethod, fluentStyle, invocationEngine,
+                steps, beanFactory, null);
+    }
+
+    /**
+     * Compiles a plan for the given builder, which records the counts and timings of its phases, including the
+     * compilation itself.
+     *
+     * @param statistics the statistics to record, or {@code null} if none are to be recorded
+     * @see #compile(Class, String, String, FluentStyle, InvocationEngine, FluentSteps, BeanFactory)
+     */
+    public static FluentBuildPlan compile(Class<?> builderClass,
+                                          String fluentMethodPrefix,
+                                          String buildMethod,
+                                          FluentStyle fluentStyle,
+                                          InvocationEngine invocationEngine,
+                                          FluentSteps steps,
+                                          BeanFactory beanFactory,
+                                          BuildStatistics statistics) throws BeansException {
+        Assert.notNull(builderClass, "Builder class must not be null");
+        Assert.notNull(fluentMethodPrefix, "Fluent method prefix must not be null");
+        Assert.notNull(buildMethod, "Build method must not be null");
+        Assert.notNull(fluentStyle, "Fluent style must not be null");
+        Assert.notNull(invocationEngine, "Invocation engine must not be null");
+
+        long start = (statistics != null) ? System.nanoTime() : 0L;
+        FluentIntrospectionResults results =
+                FluentIntrospectionResults.forClass(builderClass, fluentMethodPrefix, fluentStyle);
+        BuildMethodInvoker buildMethodInvoker = bindBuildMethod(results, invocationEngine, buildMethod);
+        if (statistics != null) {
+            statistics.record(BuildPhase.METHOD_DISCOVERY, System.nanoTime() - start);
+        }
+
+        Constructor<?> builderConstructor;
+        try {
+            builderConstructor = builderClass.getDeclaredConstructor();
+        } catch (NoSuchMethodException ex) {
+            throw new BeanInstantiationException(builderClass, "No default constructor found", ex);
+        }
+
+        return new FluentBuildPlan(results, invocationEngine, builderConstructor,
+                compileSteps(results, invocationEngine, steps, beanFactory, statistics),
+                buildMethod, buildMethodInvoker, null, statistics, null);
+    }
+
+    /**
+     * Compiles a plan that applies all of the steps of this plan, followed by the given steps. The steps of this plan
+     * are shared, rather than compiled again. Builders are not pooled, nor objects interned, by the new
+     * plan.
+     *
+     * @param buildMethod the name of the build method, or {@code null} to use the build method of this plan
+     * @param steps the steps to apply to the builder after the steps of this plan
+     * @param beanFactory the bean factory used to resolve bean references
+     */
+    public FluentBuildPlan extend(String buildMethod,
+                                  FluentSteps steps,
+                                  BeanFactory beanFactory) throws BeansException {
+        return extend(buildMethod, steps, beanFactory, null);
+    }
+
+    /**
+     * Compiles a plan that applies all of the steps of this plan, followed by the given steps, and records the counts
+     * and timings of its phases. The compilation of the steps of this plan is not recorded again.
+     *
+     * @param statistics the statistics to record, or {@code null} if none are to be recorded
+     * @see #extend(String, FluentSteps, BeanFactory)
+     */
+    public FluentBuildPlan extend(String buildMethod,
+                                  FluentSteps steps,
+                                  BeanFactory beanFactory,
+                                  BuildStatistics statistics) throws BeansException {
+        Step[] additionalSteps = compileSteps(this.introspectionResults, this.invocationEngine,
+                steps, beanFactory, statistics);
+        Step[] allSteps = new Step[this.steps.length + additionalSteps.length];
+        System.arraycopy(this.steps, 0, allSteps, 0, this.steps.length);
+        System.arraycopy(additionalSteps, 0, allSteps, this.steps.length, additionalSteps.length);
+
+        BuildMethodInvoker buildMethodInvoker = (buildMethod != null)
+                ? bindBuildMethod(this.introspectionResults, this.invocationEngine, buildMethod)
+                : this.buildMethodInvoker;
+        return new FluentBuildPlan(this.introspectionResults, this.invocationEngine, this.builderConstructor,
+                allSteps, (buildMethod != null) ? buildMethod : this.buildMethod, buildMethodInvoker, null,
+                statistics, null);
+    }
+
+    /**
+     * Returns a plan with the same steps as this plan, which reuses up to the given number of builders. After each
+     * build, the builder is reset by invoking the given method, which must have an arity of 0 and must not affect any
+     * object that was previously built.
+     *
+     * <p>Builders that turn out to be immutable, i.e. whose fluent methods return a different instance or whose build
+     * method returns the builder itself, are never reused.</p>
+     *
+     * @param resetMethod the name of the method that restores the builder to its initial state
+     * @param poolSize the maximum number of idle builders
+     */
+    public FluentBuildPlan withBuilderPool(String resetMethod, int poolSize) throws BeansException {
+        Assert.notNull(resetMethod, "Reset method must not be null");
+        Assert.isTrue(poolSize > 0, "Pool size must be greater than 0");
+
+        BuildMethodInvoker resetMethodInvoker =
+                this.introspectionResults.getBuildMethodInvoker(resetMethod, this.invocationEngine);
+        if (resetMethodInvoker == null) {
+            throw new FatalBeanException("Reset method '" + resetMethod + "' not found on "
+                    + getBuilderClass().getName());
+        }
+        return new FluentBuildPlan(this.introspectionResults, this.invocationEngine, this.builderConstructor,
+                this.steps, this.buildMethod, this.buildMethodInvoker, new BuilderPool(resetMethodInvoker, poolSize),
+                this.statistics, this.internCache);
+    }
+
+    /**
+     * Returns a plan with the same steps as this plan, which interns the objects it builds: before building, the
+     * values of all steps are resolved, and an equal object that was previously built from the same builder, build
+     * method, fluent methods and values is returned instead, if there is one. Objects are shared by all interning plans, including
+     * those of other contexts, in a bounded cache that only references them weakly.
+     *
+     * <p>Interning is only appropriate if the objects built are immutable. It is not supported for streamed
+     * values.</p>
+     */
+    public FluentBuildPlan withInterning() throws BeansException {
+        for (Step step : this.steps) {
+            if (step instanceof StreamStep) {
+                throw new FatalBeanException("Objects built from streamed values cannot be interned ("
+                        + step.getPropertyName() + " on " + getBuilderClass().getName() + ")");
+            }
+        }
+        return new FluentBuildPlan(this.introspectionResults, this.invocationEngine, this.builderConstructor,
+                this.steps, this.buildMethod, this.buildMethodInvoker, this.builderPool, this.statistics,
+                InternCache.SHARED);
+    }
+
+    /**
+     * Returns a plan with the same steps as this plan, except that the {@link FluentReplicaValue replica values} are
+     * resolved for the given replica and converted. All other steps, as well as the builder pool, statistics and
+     * interning, are shared with this plan, so deriving a plan for a replica only costs as much as converting its
+     * replica values.
+     *
+     * @param index the zero-based index of the replica
+     */
+    public FluentBuildPlan forReplica(int index) throws BeansException {
+        Step[] replicaSteps = null;
+        for (int i = 0; i < this.steps.length; i++) {
+            if (this.steps[i] instanceof ReplicaStep) {
+                if (replicaSteps == null) {
+                    replicaSteps = this.steps.clone();
+                }
+                replicaSteps[i] = ((ReplicaStep) this.steps[i]).forReplica(index, this.statistics);
+            }
+        }
+        if (replicaSteps == null) {
+            return this;
+        }
+        return new FluentBuildPlan(this.introspectionResults, this.invocationEngine, this.builderConstructor,
+                replicaSteps, this.buildMethod, this.buildMethodInvoker, this.builderPool, this.statistics,
+                this.internCache);
+    }
+
+    /**
+     * Returns a plan with the same steps as this plan, except that all bean references, including those of nested
+     * plans, are resolved (and converted) now, rather than when building. The returned plan never accesses the bean
+     * factory, so it can build on another thread while the calling thread holds the container's locks, e.g. while the
+     * calling thread is creating a singleton on which that thread would otherwise wait.
+     *
+     * <p>References to beans of any scope other than singleton are only resolved once, so the returned plan is
+     * intended for a single build.</p>
+     */
+    public FluentBuildPlan withResolvedReferences() throws BeansException {
+        Step[] resolvedSteps = null;
+        for (int i = 0; i < this.steps.length; i++) {
+            Step resolvedStep = this.steps[i].withResolvedReferences(this.statistics);
+            if (resolvedStep != this.steps[i]) {
+                if (resolvedSteps == null) {
+                    resolvedSteps = this.steps.clone();
+                }
+                resolvedSteps[i] = resolvedStep;
+            }
+        }
+        if (resolvedSteps == null) {
+            return this;
+        }
+        return new FluentBuildPlan(this.introspectionResults, this.invocationEngine, this.builderConstructor,
+                resolvedSteps, this.buildMethod, this.buildMethodInvoker, this.builderPool, this.statistics,
+                this.internCache);
+    }
+
+    /**
+     * Resolves the fluent method that a plan would invoke for each of the given steps, in the order in which they
+     * would be applied, without binding the methods or converting any values. This is intended for tools that generate
+     * code equivalent to a plan ahead of time.
+     *
+     * @param builderClass the type of builder
+     * @param fluentMethodPrefix the prefix of the fluent methods (only relevant for {@link FluentStyle#PROPERTIES})
+     * @param fluentStyle the fluent style adopted by the builder
+     * @param steps the steps to apply to the builder
+     */
+    public static List<Method> resolveFluentMethods(Class<?> builderClass,
+                                                    String fluentMethodPrefix,
+                                                    FluentStyle fluentStyle,
+                                                    FluentSteps steps) throws BeansException {
+        Method[] methods = findFluentMethods(builderClass, fluentMethodPrefix, fluentStyle, steps);
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i] == null) {
+                String propertyName = steps.getName(i);
+                throw new NotWritablePropertyException(
+                        builderClass, propertyName, "Property '" + propertyName + "' does not exist");
+            }
+        }
+        return Arrays.asList(methods);
+    }
+
+    /**
+     * Resolves the fluent method that a plan would invoke for each of the given steps, like
+     * {@link #resolveFluentMethods(Class, String, FluentStyle, FluentSteps)}, but does not fail on steps whose method
+     * does not exist. This is intended for validating many steps at once.
+     *
+     * @return the fluent method of each step, or {@code null} for each step whose method does not exist
+     */
+    public static Method[] findFluentMethods(Class<?> builderClass,
+                                             String fluentMethodPrefix,
+                                             FluentStyle fluentStyle,
+                                             FluentSteps steps) {
+        FluentIntrospectionResults results =
+                FluentIntrospectionResults.forClass(builderClass, fluentMethodPrefix, fluentStyle);
+        Method[] methods = new Method[steps.size()];
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = results.getFluentMethod(steps.getName(i), null);
+        }
+        return methods;
+    }
+
+    private static BuildMethodInvoker bindBuildMethod(FluentIntrospectionResults results,
+                                                      InvocationEngine invocationEngine,
+                                                      String buildMethod) throws BeansException {
+        BuildMethodInvoker buildMethodInvoker = results.getBuildMethodInvoker(buildMethod, invocationEngine);
+        if (buildMethodInvoker == null) {
+            throw new FatalBeanException("Build method '" + buildMethod + "' not found on "
+                    + results.getBuilderClass().getName());
+        }
+        return buildMethodInvoker;
+    }
+
+    private static Step[] compileSteps(FluentIntrospectionResults results,
+                                       InvocationEngine invocationEngine,
+                                       FluentSteps fluentSteps,
+                                       BeanFactory beanFactory,
+                                       BuildStatistics statistics) throws BeansException {
+        if (fluentSteps == null) {
+            return new Step[0];
+        }
+
+        Class<?> builderClass = results.getBuilderClass();
+        TypeConverterPool typeConverters =
+                new TypeConverterPool(beanFactory, Runtime.getRuntime().availableProcessors());
+        Step[] steps = new Step[fluentSteps.size()];
+        for (int i = 0; i < steps.length; i++) {
+            String propertyName = fluentSteps.getName(i);
+            Object value = fluentSteps.getValue(i);
+            long start = (statistics != null) ? System.nanoTime() : 0L;
+            Method method = results.getFluentMethod(propertyName, null);
+            if (method == null) {
+                throw new NotWritablePropertyException(
+                        builderClass, propertyName, "Property '" + propertyName + "' does not exist");
+            }
+            FluentMethodInvoker invoker = results.getFluentMethodInvoker(method, invocationEngine);
+            MethodParameter methodParameter = new MethodParameter(method, 0);
+            if (statistics != null) {
+                statistics.record(BuildPhase.METHOD_DISCOVERY, System.nanoTime() - start);
+            }
+
+            if (value instanceof RuntimeBeanReference) {
+                String beanName = ((RuntimeBeanReference) value).getBeanName();
+                steps[i] = new ReferenceStep(builderClass, propertyName, invoker, methodParameter,
+                        beanFactory, typeConverters, beanName);
+            } else if (value instanceof FluentBuildPlan) {
+                steps[i] = new NestedBuildStep(builderClass, propertyName, invoker, methodParameter,
+                        typeConverters, (FluentBuildPlan) value);
+            } else if (value instanceof FluentValueStream) {
+                steps[i] = new StreamStep(builderClass, propertyName, invoker, methodParameter,
+                        typeConverters, (FluentValueStream) value);
+            } else if (value instanceof FluentReplicaValue) {
+                steps[i] = new ReplicaStep(builderClass, propertyName, invoker, methodParameter,
+                        typeConverters, (FluentReplicaValue) value);
+            } else {
+                steps[i] = literalStep(builderClass, propertyName, invoker, methodParameter, typeConverters,
+                        value, statistics);
+            }
+        }
+        return steps;
+    }
+
+    private static Step literalStep(Class<?> builderClass, String propertyName, FluentMethodInvoker invoker,
+                                    MethodParameter methodParameter, TypeConverterPool typeConverters,
+                                    Object value, BuildStatistics statistics) throws BeansException {
+        long start = (statistics != null) ? System.nanoTime() : 0L;
+        Object convertedValue = convertOnce(builderClass, typeConverters, propertyName, value, methodParameter);
+        if (statistics != null) {
+            statistics.record(BuildPhase.VALUE_CONVERSION, System.nanoTime() - start);
+        }
+        if (convertedValue == value || isImmutable(convertedValue)) {
+            return constantStep(propertyName, invoker, methodParameter, convertedValue);
+        } else if (isCopyableArray(convertedValue)) {
+            // a copy of the converted array is as good as converting afresh, and needs no converter
+            return new ArrayCopyStep(propertyName, methodParameter.getMethod(), invoker, convertedValue);
+        }
+        // sharing a mutable value would leak changes between the objects built
+        return new ConversionStep(builderClass, propertyName, invoker, methodParameter, typeConverters, value);
+    }
+
+    private static Step constantStep(String propertyName, FluentMethodInvoker invoker,
+                                     MethodParameter methodParameter, Object value) {
+        Method method = methodParameter.getMethod();
+        Class<?> paramType = methodParameter.getParameterType();
+        if (paramType == int.class) {
+            return new IntConstantStep(propertyName, method, invoker, (Integer) value);
+        } else if (paramType == long.class) {
+            return new LongConstantStep(propertyName, method, invoker, (Long) value);
+        } else if (paramType == double.class) {
+            return new DoubleConstantStep(propertyName, method, invoker, (Double) value);
+        } else if (paramType == boolean.class) {
+            return new BooleanConstantStep(propertyName, method, invoker, (Boolean) value);
+        }
+        return new ConstantStep(propertyName, method, invoker, value);
+    }
+
+    /**
+     * Whether the value can safely be shared by all objects built, rather than being converted for each of them.
+     * This is the case for {@code null}, primitive wrappers, enums, strings and a number of other immutable JDK types.
+     */
+    public static boolean isImmutable(Object value) {
+        if (value == null) {
+            return true;
+        }
+        Class<?> type = value.getClass();
+        return ClassUtils.isPrimitiveOrWrapper(type) || IMMUTABLE_TYPES.contains(type)
+                || value instanceof Enum || value instanceof Class || value instanceof Charset;
+    }
+
+    /**
+     * Whether the value is an array whose elements are all immutable, so that a shallow copy of it is as good as a
+     * fresh conversion.
+     */
+    private static boolean isCopyableArray(Object value) {
+        if (value == null || !value.getClass().isArray()) {
+            return false;
+        }
+        if (value.getClass().getComponentType().isPrimitive()) {
+            return true;
+        }
+        for (Object element : (Object[]) value) {
+            if (!isImmutable(element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts the value to the type of the given method parameter, if necessary. A type converter (and hence the
+     * bean factory's conversion service and custom editors) is only acquired when the value is not already assignable
+     * to the parameter type, so no editors are created for values that need no conversion.
+     */
+    private static Object convert(Class<?> builderClass, TypeConverterPool typeConverters, String propertyName,
+                                  Object value, MethodParameter methodParameter) throws TypeMismatchException {
+        if (ClassUtils.isAssignableValue(methodParameter.getParameterType(), value)) {
+            return value;
+        }
+        TypeConverter typeConverter = typeConverters.acquire();
+        try {
+            return convert(builderClass, typeConverter, propertyName, value, methodParameter);
+        }
+        finally {
+            typeConverters.release(typeConverter);
+        }
+    }
+
+    /**
+     * Converts the value to the type of the given method parameter once, e.g. while a plan is compiled. The type
+     * converter is not returned to the pool, so that plans whose values are all converted up front do not hold on to
+     * an idle converter (with all of its editors and conversion service) for as long as they exist.
+     */
+    private static Object convertOnce(Class<?> builderClass, TypeConverterPool typeConverters, String propertyName,
+                                      Object value, MethodParameter methodParameter) throws TypeMismatchException {
+        if (ClassUtils.isAssignableValue(methodParameter.getParameterType(), value)) {
+            return value;
+        }
+        return convert(builderClass, typeConverters.acquire(), propertyName, value, methodParameter);
+    }
+
+    private static Object convert(Class<?> builderClass, TypeConverter typeConverter, String propertyName,
+                                  Object value, MethodParameter methodParameter) throws TypeMismatchException {
+        Class<?> paramType = methodParameter.getParameterType();
+        try {
+            return typeConverter.convertIfNecessary(value, paramType, methodParameter);
+        }
+        catch (ConversionNotSupportedException ex) {
+            PropertyChangeEvent pce = new PropertyChangeEvent(builderClass, propertyName, null, value);
+            throw new ConversionNotSupportedException(pce, paramType, ex);
+        }
+        catch (TypeMismatchException ex) {
+            PropertyChangeEvent pce = new PropertyChangeEvent(builderClass, propertyName, null, value);
+            throw new TypeMismatchException(pce, paramType, ex);
+        }
+    }
+
+    /**
+     * The type of builder used by this plan.
+     */
+    public Class<?> getBuilderClass() {
+        return this.introspectionResults.getBuilderClass();
+    }
+
+    /**
+     * Instantiates a new builder (or acquires an idle one, if builders are pooled), applies all steps and returns the
+     * object constructed by the build method.
+     */
+    public Object build() throws Exception {
+        if (this.internCache != null) {
+            return buildInterned(this.internCache, this.statistics);
+        }
+        if (this.statistics != null) {
+            return buildWithStatistics(this.statistics);
+        }
+
+        Object builder = (this.builderPool != null) ? this.builderPool.acquire() : null;
+        if (builder == null) {
+            builder = BeanUtils.instantiateClass(this.builderConstructor);
+        }
+
+        Object target = builder;
+        for (Step step : this.steps) {
+            target = step.apply(target);
+        }
+        Object result = this.buildMethodInvoker.invoke(target);
+
+        // a builder is only returned to the pool if the build succeeded
+        if (this.builderPool != null) {
+            this.builderPool.release(builder, target, result);
+        }
+        return result;
+    }
+
+    private Object buildWithStatistics(BuildStatistics statistics) throws Exception {
+        long start = System.nanoTime();
+        Object builder = (this.builderPool != null) ? this.builderPool.acquire() : null;
+        if (builder == null) {
+            builder = BeanUtils.instantiateClass(this.builderConstructor);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Object target = builder;
+        for (Step step : this.steps) {
+            target = step.applyWithStatistics(target, statistics);
+        }
+
+        start = System.nanoTime();
+        Object result = this.buildMethodInvoker.invoke(target);
+        if (this.builderPool != null) {
+            this.builderPool.release(builder, target, result);
+        }
+        statistics.record(BuildPhase.BUILD, elapsed + System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Resolves the values of all steps first, so that the object can be looked up before anything is built. A builder
+     * is only instantiated (and the values applied) if no equal object has been interned yet.
+     */
+    private Object buildInterned(InternCache internCache, BuildStatistics statistics) throws Exception {
+        Method[] methods = new Method[this.steps.length];
+        Object[] values = new Object[this.steps.length];
+        for (int i = 0; i < this.steps.length; i++) {
+            methods[i] = this.steps[i].getMethod();
+            values[i] = this.steps[i].resolve(statistics);
+        }
+        InternCache.Key key = new InternCache.Key(getBuilderClass(), this.buildMethod, methods, values);
+        Object result = internCache.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        long start = (statistics != null) ? System.nanoTime() : 0L;
+        Object builder = (this.builderPool != null) ? this.builderPool.acquire() : null;
+        if (builder == null) {
+            builder = BeanUtils.instantiateClass(this.builderConstructor);
+        }
+        Object target = builder;
+        for (int i = 0; i < this.steps.length; i++) {
+            target = this.steps[i].apply(target, values[i]);
+        }
+        result = this.buildMethodInvoker.invoke(target);
+        if (this.builderPool != null) {
+            this.builderPool.release(builder, target, result);
+        }
+        if (statistics != null) {
+            statistics.record(BuildPhase.BUILD, System.nanoTime() - start);
+        }
+        return internCache.intern(key, result);
+    }
+
+    /**
+     * The statistics recorded by this plan, or {@code null} if none are recorded.
+     */
+    public BuildStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    BuilderPool getBuilderPool() {
+        return this.builderPool;
+    }
+
+    /**
+     * A single invocation of a fluent method on the builder.
+     */
+    private abstract static class Step {
+
+        private final String propertyName;
+        private final Method method;
+        protected final FluentMethodInvoker invoker;
+
+        protected Step(String propertyName, Method method, FluentMethodInvoker invoker) {
+            this.propertyName = propertyName;
+            this.method = method;
+            this.invoker = invoker;
+        }
+
+        final Object apply(Object target) throws BeansException {
+            try {
+                return doApply(target);
+            }
+            catch (IllegalArgumentException ex) {
+                throw typeMismatch(target, ex);
+            }
+            catch (IllegalAccessException ex) {
+                throw notAccessible(target, ex);
+            }
+            catch (InvocationTargetException ex) {
+                throw fluentMethodFailed(target, ex);
+            }
+        }
+
+        /**
+         * Applies the step with a value that was previously {@link #resolve(BuildStatistics) resolved} by it.
+         */
+        final Object apply(Object target, Object value) throws BeansException {
+            try {
+                return this.invoker.invoke(target, value);
+            }
+            catch (IllegalArgumentException ex) {
+                throw typeMismatch(target, ex);
+            }
+            catch (IllegalAccessException ex) {
+                throw notAccessible(target, ex);
+            }
+            catch (InvocationTargetException ex) {
+                throw fluentMethodFailed(target, ex);
+            }
+        }
+
+        /**
+         * Resolves the value that this step would pass to the fluent method, without applying it.
+         *
+         * @param statistics the statistics to record, or {@code null} if none are to be recorded
+         */
+        abstract Object resolve(BuildStatistics statistics) throws BeansException;
+
+        /**
+         * Returns a step that applies the same value as this step, but that has already resolved any bean references.
+         *
+         * @param statistics the statistics to record, or {@code null} if none are to be recorded
+         */
+        Step withResolvedReferences(BuildStatistics statistics) throws BeansException {
+            return this;
+        }
+
+        /**
+         * Applies the step, recording the time taken by the fluent method invocation.
+         */
+        Object applyWithStatistics(Object target, BuildStatistics statistics) throws BeansException {
+            long start = System.nanoTime();
+            Object result = apply(target);
+            statistics.record(BuildPhase.FLUENT_INVOCATION, System.nanoTime() - start);
+            return result;
+        }
+
+        protected abstract Object doApply(Object target) throws IllegalAccessException, InvocationTargetException;
+
+        protected final BeansException typeMismatch(Object target, IllegalArgumentException ex) {
+            PropertyChangeEvent pce = new PropertyChangeEvent(target, this.propertyName, null, null);
+            return new TypeMismatchException(pce, null, ex);
+        }
+
+        protected final BeansException notAccessible(Object target, IllegalAccessException ex) {
+            return new InvalidPropertyException(target.getClass(), this.propertyName,
+                    "Property is not accessible", ex);
+        }
+
+        protected final BeansException fluentMethodFailed(Object target, InvocationTargetException ex) {
+            return new InvalidPropertyException(target.getClass(), this.propertyName,
+                    "Fluent method threw an exception", ex);
+        }
+
+        protected String getPropertyName() {
+            return this.propertyName;
+        }
+
+        /**
+         * The fluent method invoked by this step.
+         */
+        Method getMethod() {
+            return this.method;
+        }
+    }
+
+    private static final class ConstantStep extends Step {
+
+        private final Object value;
+
+        ConstantStep(String propertyName, Method method, FluentMethodInvoker invoker, Object value) {
+            super(propertyName, method, invoker);
+            this.value = value;
+        }
+
+        @Override
+        protected Object doApply(Object target) throws IllegalAccessException, InvocationTargetException {
+            return this.invoker.invoke(target, this.value);
+        }
+
+        @Override
+        Object resolve(BuildStatistics statistics) {
+            return this.value;
+        }
+    }
+
+    private static final class IntConstantStep extends Step {
+
+        private final int value;
+
+        IntConstantStep(String propertyName, Method method, FluentMethodInvoker invoker, int value) {
+            super(propertyName, method, invoker);
+            this.value = value;
+        }
+
+        @Override
+        protected Object doApply(Object target) throws IllegalAccessException, InvocationTargetException {
+            return this.invoker.invokeInt(target, this.value);
+        }
+
+        @Override
+        Object resolve(BuildStatistics statistics) {
+            return this.value;
+        }
+    }
+
+    private static final class LongConstantStep extends Step {
+
+        private final long value;
+
+        LongConstantStep(String propertyName, Method method, FluentMethodInvoker invoker, long value) {
+            super(propertyName, method, invoker);
+            this.value = value;
+        }
+
+        @Override
+        protected Object doApply(Object target) throws IllegalAccessException, InvocationTargetException {
+            return this.invoker.invokeLong(target, this.value);
+        }
+
+        @Override
+        Object resolve(BuildStatistics statistics) {
+            return this.value;
+        }
+    }
+
+    private static final class DoubleConstantStep extends Step {
+
+        private final double value;
+
+        DoubleConstantStep(String propertyName, Method method, FluentMethodInvoker invoker, double value) {
+            super(propertyName, method, invoker);
+            this.value = value;
+        }
+
+        @Override
+        protected Object doApply(Object target) throws IllegalAccessException, InvocationTargetException {
+            return this.invoker.invokeDouble(target, this.value);
+        }
+
+        @Override
+        Object resolve(BuildStatistics statistics) {
+            return this.value;
+        }
+    }
+
+    private static final class BooleanConstantStep extends Step {
+
+        private final boolean value;
+
+        BooleanConstantStep(String propertyName, Method method, FluentMethodInvoker invoker, boolean value) {
+            super(propertyName, method, invoker);
+            this.value = value;
+        }
+
+        @Override
+        protected Object doApply(Object target) throws IllegalAccessException, InvocationTargetException {
+            return this.invoker.invokeBoolean(target, this.value);
+        }
+
+        @Override
+        Object resolve(BuildStatistics statistics) {
+            return this.value;
+        }
+    }
+
+    /**
+     * Passes a copy of a converted array, whose elements are immutable, so that the objects built do not share it.
+     */
+    private static final class ArrayCopyStep extends Step {
+
+        private final Object value;
+        private final int length;
+
+        ArrayCopyStep(String propertyName, Method method, FluentMethodInvoker invoker, Object value) {
+            super(propertyName, method, invoker);
+            this.value = value;
+            this.length = Array.getLength(value);
+        }
+
+        @Override
+        protected Object doApply(Object target) throws IllegalAccessException, InvocationTargetException {
+            return this.invoker.invoke(target, resolve(null));
+        }
+
+        @Override
+        Object resolve(BuildStatistics statistics) {
+            Object copy = Array.newInstance(this.value.getClass().getComponentType(), this.length);
+            System.arraycopy(this.value, 0, copy, 0, this.length);
+            return copy;
+        }
+    }
+
+    /**
+     * A step whose value is resolved for each application, rather than once when the plan is compiled.
+     */
+    private abstract static class ResolvingStep extends Step {
+
+        protected final Class<?> builderClass;
+        protected final MethodParameter methodParameter;
+        protected final TypeConverterPool typeConverters;
+
+        protected ResolvingStep(Class<?> builderClass, String propertyName, FluentMethodInvoker invoker,
+                                MethodParameter methodParameter, TypeConverterPool typeConverters) {
+            super(propertyName, methodParameter.getMethod(), invoker);
+            this.builderClass = builderClass;
+            this.methodParameter = methodParameter;
+            this.typeConverters = typeConverters;
+        }
+
+        @Override
+        protected Object doApply(Object target) throws IllegalAccessException, InvocationTargetException {
+            return this.invoker.invoke(target, resolveValue(null));
+        }
+
+        @Override
+        Object resolve(BuildStatistics statistics) throws BeansException {
+            return resolveValue(statistics);
+        }
+
+        /**
+         * Resolves the value before timing the fluent method invocation, so that the resolution is recorded
+         * separately.
+         */
+        @Override
+        Object applyWithStatistics(Object target, BuildStatistics statistics) throws BeansException {
+            Object value = resolveValue(statistics);
+            long start = System.nanoTime();
+            try {
+                return this.invoker.invoke(target, value);
+            }
+            catch (IllegalArgumentException ex) {
+                throw typeMismatch(target, ex);
+            }
+            catch (IllegalAccessException ex) {
+                throw notAccessible(target, ex);
+            }
+            catch (InvocationTargetException ex) {
+                throw fluentMethodFailed(target, ex);
+            }
+            finally {
+                statistics.record(BuildPhase.FLUENT_INVOCATION, System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Resolves the value to pass to the fluent method.
+         *
+         * @param statistics the statistics to record, or {@code null} if none are to be recorded
+         */
+        protected abstract Object resolveValue(BuildStatistics statistics) throws BeansException;
+    }
+
+    /**
+     * Converts a literal value whose converted form is mutable afresh for every application.
+     */
+    private static final class ConversionStep extends ResolvingStep {
+
+        private final Object value;
+
+        ConversionStep(Class<?> builderClass, String propertyName, FluentMethodInvoker invoker,
+                       MethodParameter methodParameter, TypeConverterPool typeConverters, Object value) {
+            super(builderClass, propertyName, invoker, methodParameter, typeConverters);
+            this.value = value;
+        }
+
+        @Override
+        protected Object resolveValue(BuildStatistics statistics) throws BeansException {
+            long start = (statistics != null) ? System.nanoTime() : 0L;
+            Object convertedValue = convert(this.builderClass, this.typeConverters, getPropertyName(), this.value,
+                    this.methodParameter);
+            if (statistics != null) {
+                statistics.record(BuildPhase.VALUE_CONVERSION, System.nanoTime() - start);
+            }
+            return convertedValue;
+        }
+    }
+
+    /**
+     * Passes each record of a stream to the fluent method, converting them as necessary. A type converter is only
+     * acquired if a record needs converting, and then only once per application.
+     */
+    private static final class StreamStep extends Step {
+
+        private final Class<?> builderClass;
+        private final MethodParameter methodParameter;
+        private final TypeConverterPool typeConverters;
+        private final FluentValueStream stream;
+
+        StreamStep(Class<?> builderClass, String propertyName, FluentMethodInvoker invoker,
+                   MethodParameter methodParameter, TypeConverterPool typeConverters, FluentValueStream stream) {
+            super(propertyName, methodParameter.getMethod(), invoker);
+            this.builderClass = builderClass;
+            this.methodParameter = methodParameter;
+            this.typeConverters = typeConverters;
+            this.stream = stream;
+        }
+
+        @Override
+        protected Object doApply(Object target) throws IllegalAccessException, InvocationTargetException {
+            Class<?> paramType = this.methodParameter.getParameterType();
+            Scanner scanner;
+            try {
+                scanner = this.stream.open();
+            }
+            catch (IOException ex) {
+                throw new InvalidPropertyException(this.builderClass, getPropertyName(),
+                        "Could not open " + this.stream, ex);
+            }
+            TypeConverter typeConverter = null;
+            try {
+                while (scanner.hasNext()) {
+                    String record = scanner.next();
+                    if (record.length() == 0) {
+                        continue;
+                    }
+                    Object value = record;
+                    if (!ClassUtils.isAssignableValue(paramType, record)) {
+                        if (typeConverter == null) {
+                            typeConverter = this.typeConverters.acquire();
+                        }
+                        value = convert(this.builderClass, typeConverter, getPropertyName(), record,
+                                this.methodParameter);
+                    }
+                    target = this.invoker.invoke(target, value);
+                }
+                if (scanner.ioException() != null) {
+                    throw new InvalidPropertyException(this.builderClass, getPropertyName(),
+                            "Could not read " + this.stream, scanner.ioException());
+                }
+                return target;
+            }
+            finally {
+                scanner.close();
+                if (typeConverter != null) {
+                    this.typeConverters.release(typeConverter);
+                }
+            }
+        }
+
+        @Override
+        Object resolve(BuildStatistics statistics) {
+            throw new FatalBeanException("The " + this.stream + " of '" + getPropertyName()
+                    + "' cannot be resolved to a single value");
+        }
+    }
+
+    /**
+     * Holds a replica value, which is only converted once the index of the replica is known. A plan is derived for each
+     * replica, in which this step is replaced by the step of the replica's value.
+     */
+    private static final class ReplicaStep extends Step {
+
+        private final Class<?> builderClass;
+        private final MethodParameter methodParameter;
+        private final TypeConverterPool typeConverters;
+        private final FluentReplicaValue value;
+
+        ReplicaStep(Class<?> builderClass, String propertyName, FluentMethodInvoker invoker,
+                    MethodParameter methodParameter, TypeConverterPool typeConverters, FluentReplicaValue value) {
+            super(propertyName, methodParameter.getMethod(), invoker);
+            this.builderClass = builderClass;
+            this.methodParameter = methodParameter;
+            this.typeConverters = typeConverters;
+            this.value = value;
+        }
+
+        Step forReplica(int index, BuildStatistics statistics) throws BeansException {
+            return literalStep(this.builderClass, getPropertyName(), this.invoker, this.methodParameter,
+                    this.typeConverters, this.value.resolve(index), statistics);
+        }
+
+        @Override
+        protected Object doApply(Object target) {
+            throw new FatalBeanException("The " + this.value + " of '" + getPropertyName()
+                    + "' can only be applied to a replica");
+        }
+
+        @Override
+        Object resolve(BuildStatistics statistics) {
+            throw new FatalBeanException("The " + this.value + " of '" + getPropertyName()
+                    + "' can only be resolved for a replica");
+        }
+    }
+
+    /**
+     * Builds the value with a nested plan on every application, so that nested objects are built inline rather than
+     * obtained from the bean factory.
+     */
+    private static final class NestedBuildStep extends ResolvingStep {
+
+        private final FluentBuildPlan nestedPlan;
+
+        NestedBuildStep(Class<?> builderClass, String propertyName, FluentMethodInvoker invoker,
+                        MethodParameter methodParameter, TypeConverterPool typeConverters, FluentBuildPlan nestedPlan) {
+            super(builderClass, propertyName, invoker, methodParameter, typeConverters);
+            this.nestedPlan = nestedPlan;
+        }
+
+        @Override
+        Step withResolvedReferences(BuildStatistics statistics) throws BeansException {
+            FluentBuildPlan resolvedPlan = this.nestedPlan.withResolvedReferences();
+            return (resolvedPlan == this.nestedPlan) ? this : new NestedBuildStep(this.builderClass, getPropertyName(),
+                    this.invoker, this.methodParameter, this.typeConverters, resolvedPlan);
+        }
+
+        @Override
+        protected Object resolveValue(BuildStatistics statistics) throws BeansException {
+            Object value;
+            try {
+                value = this.nestedPlan.build();
+            }
+            catch (BeansException ex) {
+                throw ex;
+            }
+            catch (Exception ex) {
+                throw new InvalidPropertyException(this.builderClass, getPropertyName(),
+                        "Nested build with " + this.nestedPlan.getBuilderClass().getName() + " failed", ex);
+            }
+            return convert(this.builderClass, this.typeConverters, getPropertyName(), value, this.methodParameter);
+        }
+    }
+
+    /**
+     * Resolves a bean reference. Singletons are resolved and converted once; beans of any other scope (e.g.
+     * prototypes) are resolved and converted on every application.
+     */
+    private static final class ReferenceStep extends ResolvingStep {
+
+        private final BeanFactory beanFactory;
+        private final String beanName;
+
+        private volatile boolean singleton;
+        private volatile Object singletonValue;
+
+        ReferenceStep(Class<?> builderClass, String propertyName, FluentMethodInvoker invoker,
+                      MethodParameter methodParameter, BeanFactory beanFactory, TypeConverterPool typeConverters,
+                      String beanName) {
+            super(builderClass, propertyName, invoker, methodParameter, typeConverters);
+            this.beanFactory = beanFactory;
+            this.beanName = beanName;
+        }
+
+        @Override
+        Step withResolvedReferences(BuildStatistics statistics) throws BeansException {
+            return new ConstantStep(getPropertyName(), getMethod(), this.invoker, resolveValue(statistics));
+        }
+
+        @Override
+        protected Object resolveValue(BuildStatistics statistics) throws BeansException {
+            if (this.singleton) {
+                return this.singletonValue;
+            }
+            long start = (statistics != null) ? System.nanoTime() : 0L;
+            Object bean = this.beanFactory.getBean(this.beanName);
+            if (statistics != null) {
+                statistics.record(BuildPhase.REFERENCE_RESOLUTION, System.nanoTime() - start);
+            }
+
+            Object value = bean;
+            if (!ClassUtils.isAssignableValue(this.methodParameter.getParameterType(), bean)) {
+                start = (statistics != null) ? System.nanoTime() : 0L;
+                value = convert(this.builderClass, this.typeConverters, getPropertyName(), bean, this.methodParameter);
+                if (statistics != null) {
+                    statistics.record(BuildPhase.VALUE_CONVERSION, System.nanoTime() - start);
+                }
+            }
+            if (this.beanFactory.isSingleton(this.beanName)) {
+                this.singletonValue = value;
+                this.singleton = true;
+            }
+            return value;
+        }
+    }
+}
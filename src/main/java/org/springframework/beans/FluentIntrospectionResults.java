@@ -0,0 +1,268 @@
+package org.springframework.beans;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Internal class that caches the fluent methods exposed by a builder class for a given method prefix and
+ * {@link FluentStyle}. The reflective scan of the builder class hierarchy is performed once per combination and
+ * shared by all {@link FluentBeanWrapper} instances.</p>
+ *
+ * <p>Overloaded fluent methods are indexed by their parameter type, so that resolving a method for a given value type
+ * only falls back to a (memoised) best-match search when there is no exact match.</p>
+ *
+ * <p>Classes that are not cache-safe with respect to the class loader that loaded this class (e.g. builders deployed
+ * in a web application) are held by weak key, with softly referenced results, so that they can be unloaded when
+ * their class loader goes away. This mirrors the approach taken by {@link CachedIntrospectionResults}.</p>
+ */
+final class FluentIntrospectionResults {
+
+    /**
+     * Key used for overload lookups when the value type is not known.
+     */
+    private static final Class<?> UNKNOWN_TYPE = UnknownType.class;
+
+    /**
+     * Results for classes that are cache-safe, i.e. loaded by the same (or a parent) class loader as this class.
+     */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, FluentIntrospectionResults>> strongClassCache =
+            Maps.newConcurrentMap();
+
+    /**
+     * Results for classes loaded by other class loaders, which must not be prevented from being garbage collected.
+     */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, FluentIntrospectionResults>> weakClassCache =
+            CacheBuilder.newBuilder().weakKeys().softValues()
+                    .<Class<?>, ConcurrentMap<String, FluentIntrospectionResults>>build().asMap();
+
+    /**
+     * Returns the (possibly cached) fluent methods exposed by the given builder class.
+     *
+     * @param builderClass the builder class to introspect
+     * @param fluentMethodPrefix the common prefix of the fluent methods (only relevant for {@link FluentStyle#PROPERTIES})
+     * @param fluentStyle the fluent style adopted by the builder
+     */
+    static FluentIntrospectionResults forClass(Class<?> builderClass, String fluentMethodPrefix, FluentStyle fluentStyle) {
+        boolean cacheSafe = ClassUtils.isCacheSafe(builderClass, FluentIntrospectionResults.class.getClassLoader());
+        ConcurrentMap<Class<?>, ConcurrentMap<String, FluentIntrospectionResults>> classCache =
+                cacheSafe ? strongClassCache : weakClassCache;
+
+        ConcurrentMap<String, FluentIntrospectionResults> resultsByKey = classCache.get(builderClass);
+        if (resultsByKey == null) {
+            ConcurrentMap<String, FluentIntrospectionResults> newResultsByKey = Maps.newConcurrentMap();
+            resultsByKey = classCache.putIfAbsent(builderClass, newResultsByKey);
+            if (resultsByKey == null) {
+                resultsByKey = newResultsByKey;
+            }
+        }
+
+        String key = (fluentStyle == FluentStyle.PROPERTIES) ? fluentStyle + ":" + fluentMethodPrefix : fluentStyle.name();
+        FluentIntrospectionResults results = resultsByKey.get(key);
+        if (results == null) {
+            FluentIntrospectionResults newResults =
+                    new FluentIntrospectionResults(builderClass, fluentMethodPrefix, fluentStyle);
+            results = resultsByKey.putIfAbsent(key, newResults);
+            if (results == null) {
+                results = newResults;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Clears the cached results for all classes. Mainly intended for testing.
+     */
+    static void clearCache() {
+        strongClassCache.clear();
+        weakClassCache.clear();
+    }
+
+    private final Class<?> builderClass;
+    private final FluentStyle fluentStyle;
+    private final String fluentMethodPrefix;
+
+    // overloaded methods are held in declaration order, as discovered by ReflectionUtils
+    private final Map<String, List<Method>> properties;
+
+    // overloaded methods indexed by parameter type; lazily extended with best-match resolutions
+    private final Map<String, ConcurrentMap<Class<?>, Method>> overloads;
+
+    // methods are bound to invokers on first use, once per invocation engine
+    private final Map<InvocationEngine, ConcurrentMap<Method, FluentMethodInvoker>> fluentMethodInvokers =
+            new EnumMap<InvocationEngine, ConcurrentMap<Method, FluentMethodInvoker>>(InvocationEngine.class);
+    private final Map<InvocationEngine, ConcurrentMap<String, BuildMethodInvoker>> buildMethodInvokers =
+            new EnumMap<InvocationEngine, ConcurrentMap<String, BuildMethodInvoker>>(InvocationEngine.class);
+
+    private FluentIntrospectionResults(final Class<?> builderClass,
+                                       final String fluentMethodPrefix,
+                                       final FluentStyle fluentStyle) {
+        this.builderClass = builderClass;
+        this.fluentStyle = fluentStyle;
+        this.fluentMethodPrefix = fluentMethodPrefix;
+
+        ListMultimap<String, Method> methods = (fluentStyle == FluentStyle.PROPERTIES)
+                ? findFluentProperties(builderClass, fluentMethodPrefix)
+                : findFluentMethods(builderClass);
+
+        ImmutableMap.Builder<String, List<Method>> properties = ImmutableMap.builder();
+        ImmutableMap.Builder<String, ConcurrentMap<Class<?>, Method>> overloads = ImmutableMap.builder();
+        for (String propertyName : methods.keySet()) {
+            List<Method> candidates = methods.get(propertyName);
+            properties.put(propertyName, ImmutableList.copyOf(candidates));
+            if (candidates.size() > 1) {
+                ConcurrentMap<Class<?>, Method> byType = Maps.newConcurrentMap();
+                for (Method candidate : candidates) {
+                    // the first method found is the most specific (i.e. declared furthest down the hierarchy)
+                    byType.putIfAbsent(candidate.getParameterTypes()[0], candidate);
+                }
+                overloads.put(propertyName, byType);
+            }
+        }
+        this.properties = properties.build();
+        this.overloads = overloads.build();
+
+        for (InvocationEngine engine : InvocationEngine.values()) {
+            this.fluentMethodInvokers.put(engine, Maps.<Method, FluentMethodInvoker>newConcurrentMap());
+            this.buildMethodInvokers.put(engine, Maps.<String, BuildMethodInvoker>newConcurrentMap());
+        }
+    }
+
+    private static ListMultimap<String, Method> findFluentMethods(final Class<?> builderClass) {
+        final ListMultimap<String, Method> methods = ArrayListMultimap.create();
+        ReflectionUtils.doWithMethods(builderClass,
+                new ReflectionUtils.MethodCallback() {
+                    @Override
+                    public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
+                        methods.put(method.getName(), method);
+                    }
+                },
+                new ReflectionUtils.MethodFilter() {
+                    @Override
+                    public boolean matches(Method method) {
+                        return method.getParameterTypes().length == 1
+                                && builderClass.isAssignableFrom(method.getReturnType());
+                    }
+                });
+        return methods;
+    }
+
+    private static ListMultimap<String, Method> findFluentProperties(final Class<?> builderClass,
+                                                                   final String fluentMethodPrefix) {
+        final ListMultimap<String, Method> methods = ArrayListMultimap.create();
+        ReflectionUtils.doWithMethods(builderClass,
+                new ReflectionUtils.MethodCallback() {
+                    @Override
+                    public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
+                        String propertyName = method.getName().substring(fluentMethodPrefix.length());
+                        methods.put(StringUtils.uncapitalize(propertyName), method);
+                    }
+                },
+                new ReflectionUtils.MethodFilter() {
+                    @Override
+                    public boolean matches(Method method) {
+                        return method.getName().startsWith(fluentMethodPrefix)
+                                && method.getParameterTypes().length == 1
+                                && builderClass.isAssignableFrom(method.getReturnType());
+                    }
+                });
+        return methods;
+    }
+
+    Class<?> getBuilderClass() {
+        return this.builderClass;
+    }
+
+    boolean hasFluentMethod(String propertyName) {
+        return this.properties.containsKey(propertyName);
+    }
+
+    /**
+     * Returns the fluent method for the given property, resolving overloads against the given value type.
+     *
+     * @param propertyName the name of the fluent property/method
+     * @param type the type of the value to be passed to the method, or {@code null} if not known
+     * @return the matching method, or {@code null} if there is none
+     */
+    Method getFluentMethod(String propertyName, Class<?> type) {
+        List<Method> methods = this.properties.get(propertyName);
+        if (methods == null) {
+            return null;
+        } else if (methods.size() == 1) {
+            return methods.get(0);
+        }
+
+        ConcurrentMap<Class<?>, Method> byType = this.overloads.get(propertyName);
+        Class<?> key = (type != null) ? type : UNKNOWN_TYPE;
+        Method method = byType.get(key);
+        if (method == null) {
+            String methodName = (this.fluentStyle == FluentStyle.METHODS)
+                    ? propertyName
+                    : this.fluentMethodPrefix + StringUtils.capitalize(propertyName);
+            method = MethodUtils.getMatchingAccessibleMethod(this.builderClass, methodName, new Class[] {type});
+            if (method != null) {
+                byType.putIfAbsent(key, method);
+            }
+        }
+        return method;
+    }
+
+    /**
+     * Returns the invoker bound to the given fluent method by the given engine.
+     *
+     * @param method a fluent method previously returned by {@link #getFluentMethod(String, Class)}
+     * @param engine the engine to bind the method with
+     */
+    FluentMethodInvoker getFluentMethodInvoker(Method method, InvocationEngine engine) {
+        ConcurrentMap<Method, FluentMethodInvoker> invokers = this.fluentMethodInvokers.get(engine);
+        FluentMethodInvoker invoker = invokers.get(method);
+        if (invoker == null) {
+            FluentMethodInvoker newInvoker = engine.bindFluentMethod(method);
+            invoker = invokers.putIfAbsent(method, newInvoker);
+            if (invoker == null) {
+                invoker = newInvoker;
+            }
+        }
+        return invoker;
+    }
+
+    /**
+     * Returns the invoker bound to the named build method by the given engine.
+     *
+     * @param buildMethod the name of the build method, which must have an arity of 0
+     * @param engine the engine to bind the method with
+     * @return the bound invoker, or {@code null} if the builder class has no such method
+     */
+    BuildMethodInvoker getBuildMethodInvoker(String buildMethod, InvocationEngine engine) {
+        ConcurrentMap<String, BuildMethodInvoker> invokers = this.buildMethodInvokers.get(engine);
+        BuildMethodInvoker invoker = invokers.get(buildMethod);
+        if (invoker == null) {
+            Method method = BeanUtils.findMethod(this.builderClass, buildMethod);
+            if (method == null) {
+                return null;
+            }
+            BuildMethodInvoker newInvoker = engine.bindBuildMethod(method);
+            invoker = invokers.putIfAbsent(buildMethod, newInvoker);
+            if (invoker == null) {
+                invoker = newInvoker;
+            }
+        }
+        return invoker;
+    }
+
+    private static final class UnknownType {
+    }
+}
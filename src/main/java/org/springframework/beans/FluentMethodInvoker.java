@@ -0,0 +1,44 @@
+package org.springframework.beans;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * <p>Invokes a single fluent method (i.e. a method with an arity of 1 that returns the builder) on a target builder.
+ * Instances are bound to their method once and may be shared between threads.</p>
+ *
+ * <p>The primitive variants allow callers that hold unboxed values to avoid boxing them. Implementations that cannot
+ * invoke the method without boxing simply box the argument and delegate to {@link #invoke(Object, Object)}.</p>
+ *
+ * @see InvocationEngine
+ */
+public abstract class FluentMethodInvoker {
+
+    /**
+     * Invokes the fluent method on the given target.
+     *
+     * @param target the builder on which to invoke the method
+     * @param argument the argument to pass to the method
+     * @return the value returned by the fluent method (typically the builder itself, or a new immutable instance)
+     * @throws IllegalArgumentException if the argument is not compatible with the method's parameter type
+     * @throws IllegalAccessException if the method is not accessible
+     * @throws InvocationTargetException if the method itself threw an exception
+     */
+    public abstract Object invoke(Object target, Object argument)
+            throws IllegalAccessException, InvocationTargetException;
+
+    public Object invokeInt(Object target, int argument) throws IllegalAccessException, InvocationTargetException {
+        return invoke(target, argument);
+    }
+
+    public Object invokeLong(Object target, long argument) throws IllegalAccessException, InvocationTargetException {
+        return invoke(target, argument);
+    }
+
+    public Object invokeDouble(Object target, double argument) throws IllegalAccessException, InvocationTargetException {
+        return invoke(target, argument);
+    }
+
+    public Object invokeBoolean(Object target, boolean argument) throws IllegalAccessException, InvocationTargetException {
+        return invoke(target, argument);
+    }
+}
@@ -0,0 +1,172 @@
+package org.springframework.beans;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.util.Assert;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A compiled recipe for creating objects through a builder, for use outside of (or alongside) the container. This
+ * is the same engine that backs the {@code sg:builder-factory} element, so a recipe behaves exactly like the equivalent
+ * XML definition.</p>
+ *
+ * <p>The builder methods are resolved, and the literal values converted, once when the recipe is compiled. Each call
+ * to {@link #create()} then only instantiates the builder, invokes the fluent methods with the precompiled values and
+ * invokes the build method. Recipes are immutable and can be shared between any number of threads:</p>
+ *
+ * <pre>
+ * Map&lt;String, List&lt;Object&gt;&gt; steps = new LinkedHashMap&lt;String, List&lt;Object&gt;&gt;();
+ * steps.put("name", Arrays.&lt;Object&gt;asList("World"));
+ * steps.put("timeout", Arrays.&lt;Object&gt;asList("30"));
+ * FluentRecipe recipe = FluentRecipe.compile(GreeterBuilder.class, FluentStyle.PROPERTIES, "with", "build", steps);
+ *
+ * Greeter greeter = (Greeter) recipe.create();
+ * </pre>
+ */
+public final class FluentRecipe {
+
+    private final FluentBuildPlan buildPlan;
+
+    private FluentRecipe(FluentBuildPlan buildPlan) {
+        this.buildPlan = buildPlan;
+    }
+
+    /**
+     * Compiles a recipe for the given builder, whose steps only consist of literal values.
+     *
+     * @param builderClass the type of builder, which must provide a default constructor
+     * @param fluentStyle the fluent style adopted by the builder
+     * @param fluentMethodPrefix the prefix of the fluent methods (only relevant for {@link FluentStyle#PROPERTIES});
+     * defaults to {@code with}
+     * @param buildMethod the name of the build method; defaults to {@code build}
+     * @param steps the values to apply to the builder, keyed by fluent property/method name; the values of each name
+     * are applied together, in the order of the map
+     */
+    public static FluentRecipe compile(Class<?> builderClass,
+                                       FluentStyle fluentStyle,
+                                       String fluentMethodPrefix,
+                                       String buildMethod,
+                                       Map<String, List<Object>> steps) throws BeansException {
+        return compile(builderClass, fluentStyle, fluentMethodPrefix, buildMethod, InvocationEngine.DEFAULT,
+                steps, null);
+    }
+
+    /**
+     * Compiles a recipe for the given builder.
+     *
+     * @param invocationEngine the engine used to invoke the builder methods
+     * @param steps the values to apply to the builder, keyed by fluent property/method name; each value is either a
+     * literal, a {@link RuntimeBeanReference}, a {@link FluentValueStream} or a nested {@link FluentBuildPlan}
+     * @param beanFactory the bean factory whose type converter converts the literal values, and which resolves bean
+     * references; may be {@code null} if there are no bean references
+     * @see #compile(Class, FluentStyle, String, String, Map)
+     */
+    public static FluentRecipe compile(Class<?> builderClass,
+                                       FluentStyle fluentStyle,
+                                       String fluentMethodPrefix,
+                                       String buildMethod,
+                                       InvocationEngine invocationEngine,
+                                       Map<String, List<Object>> steps,
+                                       BeanFactory beanFactory) throws BeansException {
+        if (beanFactory == null && steps != null) {
+            for (List<Object> values : steps.values()) {
+                for (Object value : values) {
+                    Assert.isTrue(!(value instanceof RuntimeBeanReference),
+                            "A bean factory is required to resolve " + value);
+                }
+            }
+        }
+        return new FluentRecipe(FluentBuildPlan.compile(builderClass,
+                (fluentMethodPrefix != null) ? fluentMethodPrefix : "with",
+                (buildMethod != null) ? buildMethod : "build",
+                fluentStyle, invocationEngine, FluentSteps.of(steps), beanFactory));
+    }
+
+    /**
+     * Returns a recipe that creates objects according to the given plan, e.g. one that was extended from a template
+     * or that records statistics.
+     */
+    public static FluentRecipe of(FluentBuildPlan buildPlan) {
+        Assert.notNull(buildPlan, "Build plan must not be null");
+        return new FluentRecipe(buildPlan);
+    }
+
+    /**
+     * Returns a recipe that resets its builders after each build and reuses them for later builds.
+     *
+     * @see FluentBuildPlan#withBuilderPool(String, int)
+     */
+    public FluentRecipe withBuilderPool(String resetMethod, int poolSize) throws BeansException {
+        return new FluentRecipe(this.buildPlan.withBuilderPool(resetMethod, poolSize));
+    }
+
+    /**
+     * Returns a recipe that interns the objects it creates, so that equal objects created from the same builder, build
+     * method and values are shared.
+     *
+     * @see FluentBuildPlan#withInterning()
+     */
+    public FluentRecipe withInterning() throws BeansException {
+        return new FluentRecipe(this.buildPlan.withInterning());
+    }
+
+    /**
+     * Returns a recipe that creates the replica with the given index, whose {@link FluentReplicaValue replica values}
+     * are resolved for that index. Everything else is shared with this recipe.
+     *
+     * @see FluentBuildPlan#forReplica(int)
+     */
+    public FluentRecipe forReplica(int index) throws BeansException {
+        return new FluentRecipe(this.buildPlan.forReplica(index));
+    }
+
+    /**
+     * Returns a recipe whose bean references are resolved now, so that it can create an object on another thread
+     * without accessing the bean factory. References to beans that are not singletons are only resolved once, so the
+     * returned recipe is intended to create a single object.
+     *
+     * @see FluentBuildPlan#withResolvedReferences()
+     */
+    public FluentRecipe withResolvedReferences() throws BeansException {
+        return new FluentRecipe(this.buildPlan.withResolvedReferences());
+    }
+
+    /**
+     * Creates a new object, or returns an interned one.
+     *
+     * @throws BeanInstantiationException if the builder could not be instantiated, or its build method failed
+     * @throws BeansException if any of the fluent methods failed
+     */
+    public Object create() throws BeansException {
+        try {
+            return this.buildPlan.build();
+        }
+        catch (BeansException ex) {
+            throw ex;
+        }
+        catch (InvocationTargetException ex) {
+            throw new BeanInstantiationException(getBuilderClass(), "Build method threw exception",
+                    ex.getTargetException());
+        }
+        catch (Exception ex) {
+            throw new BeanInstantiationException(getBuilderClass(), "Build failed", ex);
+        }
+    }
+
+    /**
+     * The type of builder used by this recipe.
+     */
+    public Class<?> getBuilderClass() {
+        return this.buildPlan.getBuilderClass();
+    }
+
+    /**
+     * The statistics recorded by this recipe, or {@code null} if none are recorded.
+     */
+    public BuildStatistics getStatistics() {
+        return this.buildPlan.getStatistics();
+    }
+}
@@ -0,0 +1,47 @@
+package org.springframework.beans;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * <p>A literal value that differs between the replicas built from a plan: each occurrence of {@link #INDEX_TOKEN} is
+ * replaced by the (zero-based) index of the replica, and the result is then converted like any other literal.</p>
+ *
+ * @see FluentBuildPlan#forReplica(int)
+ */
+public final class FluentReplicaValue {
+
+    /**
+     * The token that is replaced by the index of the replica.
+     */
+    public static final String INDEX_TOKEN = "{index}";
+
+    private final String template;
+
+    /**
+     * @param template the literal value, containing any number of {@link #INDEX_TOKEN index tokens}
+     */
+    public FluentReplicaValue(String template) {
+        Assert.notNull(template, "Template must not be null");
+        this.template = template;
+    }
+
+    /**
+     * Whether the value is a literal that contains an {@link #INDEX_TOKEN index token}.
+     */
+    public static boolean isTemplate(Object value) {
+        return value instanceof String && ((String) value).contains(INDEX_TOKEN);
+    }
+
+    /**
+     * Returns the literal value of the replica with the given index.
+     */
+    public String resolve(int index) {
+        return StringUtils.replace(this.template, INDEX_TOKEN, String.valueOf(index));
+    }
+
+    @Override
+    public String toString() {
+        return "replica value " + this.template;
+    }
+}
@@ -0,0 +1,105 @@
+package org.springframework.beans;
+
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>The ordered steps to apply to a builder: the name of a fluent property/method and the value to pass to it, for
+ * each step. The names and values are held in parallel arrays, and steps are applied in the order in which they were
+ * declared, even when steps of different names are interleaved (which matters for {@link FluentStyle#METHODS}
+ * builders).</p>
+ *
+ * <p>Steps are immutable. Equal names are expected to be interned, as they are repeated in many steps.</p>
+ */
+public final class FluentSteps {
+
+    /**
+     * No steps at all.
+     */
+    public static final FluentSteps EMPTY = new FluentSteps(new String[0], new Object[0]);
+
+    private final String[] names;
+    private final Object[] values;
+
+    /**
+     * @param names the name of the fluent property/method of each step
+     * @param values the value of each step; each value is either a literal, a
+     * {@link org.springframework.beans.factory.config.RuntimeBeanReference}, a {@link FluentValueStream}, a
+     * {@link FluentReplicaValue} or a nested {@link FluentBuildPlan}
+     */
+    public FluentSteps(String[] names, Object[] values) {
+        Assert.notNull(names, "Names must not be null");
+        Assert.notNull(values, "Values must not be null");
+        Assert.isTrue(names.length == values.length, "Expected as many names as values");
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * Returns the steps of the given builder properties, grouped by name in the order of the map.
+     */
+    public static FluentSteps of(Map<String, List<Object>> builderProperties) {
+        if (builderProperties == null) {
+            return EMPTY;
+        }
+        int size = 0;
+        for (List<Object> values : builderProperties.values()) {
+            size += values.size();
+        }
+        String[] names = new String[size];
+        Object[] values = new Object[size];
+        int index = 0;
+        for (Map.Entry<String, List<Object>> builderProperty : builderProperties.entrySet()) {
+            String name = builderProperty.getKey().intern();
+            for (Object value : builderProperty.getValue()) {
+                names[index] = name;
+                values[index++] = value;
+            }
+        }
+        return new FluentSteps(names, values);
+    }
+
+    /**
+     * Returns steps with the same names as these steps, but with the given values.
+     */
+    public FluentSteps withValues(Object[] values) {
+        return new FluentSteps(this.names, values);
+    }
+
+    public int size() {
+        return this.names.length;
+    }
+
+    public String getName(int index) {
+        return this.names[index];
+    }
+
+    public Object getValue(int index) {
+        return this.values[index];
+    }
+
+    /**
+     * Returns a copy of the names of all steps.
+     */
+    public String[] getNames() {
+        return this.names.clone();
+    }
+
+    /**
+     * Returns a copy of the values of all steps.
+     */
+    public Object[] getValues() {
+        return this.values.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 0; i < this.names.length; i++) {
+            result.append((i > 0) ? ", " : "").append(this.names[i]).append('=').append(this.values[i]);
+        }
+        return result.append(']').toString();
+    }
+}
@@ -0,0 +1,60 @@
+package org.springframework.beans;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A resource whose records are each passed to a fluent method, as if they had been specified as individual values.
+ * The resource is read afresh, as a stream, for every object built, so that neither the bean definition nor the
+ * {@link FluentBuildPlan} holds the records, however large the resource is.</p>
+ *
+ * <p>Records are separated by line breaks and, if one is specified, by a delimiter as well, so that no record of a
+ * delimited resource ends with a line break (e.g. the last record of a file that ends with one). Empty records are
+ * skipped.</p>
+ */
+public final class FluentValueStream {
+
+    private static final String LINE_DELIMITER = "\\r?\\n";
+
+    private final Resource resource;
+    private final String encoding;
+    private final Pattern delimiter;
+
+    /**
+     * @param resource the resource to read the records from
+     * @param encoding the encoding of the resource
+     * @param delimiter the literal delimiter between records, in addition to line breaks, or {@code null} to read one
+     * record per line
+     */
+    public FluentValueStream(Resource resource, String encoding, String delimiter) {
+        Assert.notNull(resource, "Resource must not be null");
+        Assert.notNull(encoding, "Encoding must not be null");
+        this.resource = resource;
+        this.encoding = encoding;
+        this.delimiter = Pattern.compile(
+                (delimiter != null) ? Pattern.quote(delimiter) + "|" + LINE_DELIMITER : LINE_DELIMITER);
+    }
+
+    public Resource getResource() {
+        return this.resource;
+    }
+
+    /**
+     * Opens a new scanner over the records of the resource, which must be closed by the caller.
+     */
+    Scanner open() throws IOException {
+        Scanner scanner = new Scanner(Channels.newChannel(this.resource.getInputStream()), this.encoding);
+        scanner.useDelimiter(this.delimiter);
+        return scanner;
+    }
+
+    @Override
+    public String toString() {
+        return "stream of " + this.resource.getDescription();
+    }
+}
@@ -0,0 +1,91 @@
+package org.springframework.beans;
+
+import com.google.common.cache.CacheBuilder;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Internal class that holds the objects built by interning {@link FluentBuildPlan}s, keyed by the builder, the build
+ * method, and the fluent methods and resolved values of the steps. A single cache is {@link #SHARED shared} by all
+ * plans, so that equal objects are shared across definitions and contexts.</p>
+ *
+ * <p>The cache is bounded, and only holds its objects weakly, so that it never keeps an object alive that is no longer
+ * used elsewhere. Lookups and insertions do not lock the cache as a whole.</p>
+ */
+final class InternCache {
+
+    /**
+     * The maximum number of objects held by the shared cache.
+     */
+    static final int SHARED_MAXIMUM_SIZE = 10000;
+
+    static final InternCache SHARED = new InternCache(SHARED_MAXIMUM_SIZE);
+
+    private final ConcurrentMap<Object, Object> objects;
+
+    InternCache(int maximumSize) {
+        this.objects = CacheBuilder.newBuilder().maximumSize(maximumSize).weakValues().build().asMap();
+    }
+
+    /**
+     * Returns the object built from the given key, or {@code null} if there is none.
+     */
+    Object get(Key key) {
+        return this.objects.get(key);
+    }
+
+    /**
+     * Adds the object built from the given key, unless another thread added one first.
+     *
+     * @return the object held by the cache
+     */
+    Object intern(Key key, Object object) {
+        Object existing = this.objects.putIfAbsent(key, object);
+        return (existing != null) ? existing : object;
+    }
+
+    /**
+     * The key of an interned object. Equal values passed to different fluent methods make different keys. Arrays among
+     * the values are compared by their contents.
+     */
+    static final class Key {
+
+        private final Class<?> builderClass;
+        private final String buildMethod;
+        private final Method[] methods;
+        private final Object[] values;
+        private final int hashCode;
+
+        Key(Class<?> builderClass, String buildMethod, Method[] methods, Object[] values) {
+            this.builderClass = builderClass;
+            this.buildMethod = buildMethod;
+            this.methods = methods;
+            this.values = values;
+            this.hashCode = 31 * (31 * (31 * builderClass.hashCode() + buildMethod.hashCode())
+                    + Arrays.hashCode(methods)) + Arrays.deepHashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) other;
+            return this.hashCode == that.hashCode
+                    && this.builderClass == that.builderClass
+                    && this.buildMethod.equals(that.buildMethod)
+                    && Arrays.equals(this.methods, that.methods)
+                    && Arrays.deepEquals(this.values, that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.springframework.beans;
+
+import java.lang.reflect.Method;
+
+/**
+ * Defines how fluent methods and build methods are invoked on the target builder.
+ */
+public enum InvocationEngine {
+
+    /**
+     * Methods are invoked via {@link Method#invoke(Object, Object...)}. Every invocation goes through reflective
+     * dispatch, and primitive arguments are boxed.
+     */
+    REFLECTION {
+        @Override
+        public FluentMethodInvoker bindFluentMethod(Method method) {
+            return new ReflectiveInvokers.FluentInvoker(method);
+        }
+
+        @Override
+        public BuildMethodInvoker bindBuildMethod(Method method) {
+            return new ReflectiveInvokers.BuildInvoker(method);
+        }
+    },
+
+    /**
+     * Methods are bound once as {@link java.lang.invoke.MethodHandle}s, with primitive-specialised handles for
+     * fluent methods that accept primitive arguments. Methods that cannot be accessed through a method handle are
+     * invoked via reflection instead.
+     */
+    METHOD_HANDLE {
+        @Override
+        public FluentMethodInvoker bindFluentMethod(Method method) {
+            FluentMethodInvoker invoker = MethodHandleInvokers.bindFluentMethod(method);
+            return (invoker != null) ? invoker : REFLECTION.bindFluentMethod(method);
+        }
+
+        @Override
+        public BuildMethodInvoker bindBuildMethod(Method method) {
+            BuildMethodInvoker invoker = MethodHandleInvokers.bindBuildMethod(method);
+            return (invoker != null) ? invoker : REFLECTION.bindBuildMethod(method);
+        }
+    };
+
+    /**
+     * The engine used when none is specified.
+     */
+    public static final InvocationEngine DEFAULT = METHOD_HANDLE;
+
+    /**
+     * Binds the given fluent method (with an arity of 1) to an invoker.
+     */
+    public abstract FluentMethodInvoker bindFluentMethod(Method method);
+
+    /**
+     * Binds the given build method (with an arity of 0) to an invoker.
+     */
+    public abstract BuildMethodInvoker bindBuildMethod(Method method);
+}
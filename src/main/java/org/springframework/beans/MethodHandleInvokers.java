@@ -0,0 +1,173 @@
+package org.springframework.beans;
+
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * <p>Invokers that call the bound method via a {@link MethodHandle}.</p>
+ *
+ * <p>Every fluent method is bound to a generic {@code (Object, Object)Object} handle. Fluent methods that accept an
+ * {@code int}, {@code long}, {@code double} or {@code boolean} are additionally bound to a handle that accepts the
+ * unboxed argument.</p>
+ *
+ * <p>Exceptions thrown by the target method are wrapped in an {@link InvocationTargetException}, and incompatible
+ * arguments are rejected with an {@link IllegalArgumentException}, so that callers see the same exceptions as
+ * they would with reflection.</p>
+ *
+ * @see InvocationEngine#METHOD_HANDLE
+ */
+final class MethodHandleInvokers {
+
+    private static final MethodType GENERIC_FLUENT_TYPE = MethodType.methodType(Object.class, Object.class, Object.class);
+    private static final MethodType GENERIC_BUILD_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private MethodHandleInvokers() {
+    }
+
+    /**
+     * Returns an invoker for the given fluent method, or {@code null} if it cannot be accessed via a method handle.
+     */
+    static FluentMethodInvoker bindFluentMethod(Method method) {
+        MethodHandle handle = unreflect(method);
+        if (handle == null) {
+            return null;
+        }
+
+        Class<?> paramType = method.getParameterTypes()[0];
+        MethodHandle generic = handle.asType(GENERIC_FLUENT_TYPE);
+        if (paramType.isPrimitive() && paramType != void.class) {
+            MethodHandle primitive = handle.asType(MethodType.methodType(Object.class, Object.class, paramType));
+            return new FluentInvoker(paramType, generic, primitive);
+        }
+        return new FluentInvoker(paramType, generic, null);
+    }
+
+    /**
+     * Returns an invoker for the given build method, or {@code null} if it cannot be accessed via a method handle.
+     */
+    static BuildMethodInvoker bindBuildMethod(Method method) {
+        MethodHandle handle = unreflect(method);
+        return (handle != null) ? new BuildInvoker(handle.asType(GENERIC_BUILD_TYPE)) : null;
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method);
+        }
+        catch (IllegalAccessException ex) {
+            // e.g. a public method declared by a non-public class
+        }
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        }
+        catch (SecurityException ex) {
+            return null;
+        }
+        catch (IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    static final class FluentInvoker extends FluentMethodInvoker {
+
+        private final Class<?> paramType;
+        private final MethodHandle generic;
+        private final MethodHandle primitive;
+
+        FluentInvoker(Class<?> paramType, MethodHandle generic, MethodHandle primitive) {
+            this.paramType = paramType;
+            this.generic = generic;
+            this.primitive = primitive;
+        }
+
+        @Override
+        public Object invoke(Object target, Object argument) throws InvocationTargetException {
+            if (!ClassUtils.isAssignableValue(this.paramType, argument)) {
+                throw new IllegalArgumentException("argument type mismatch");
+            }
+            try {
+                return (Object) this.generic.invokeExact(target, argument);
+            }
+            catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+
+        @Override
+        public Object invokeInt(Object target, int argument) throws InvocationTargetException {
+            if (this.paramType != int.class) {
+                return invoke(target, argument);
+            }
+            try {
+                return (Object) this.primitive.invokeExact(target, argument);
+            }
+            catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+
+        @Override
+        public Object invokeLong(Object target, long argument) throws InvocationTargetException {
+            if (this.paramType != long.class) {
+                return invoke(target, argument);
+            }
+            try {
+                return (Object) this.primitive.invokeExact(target, argument);
+            }
+            catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+
+        @Override
+        public Object invokeDouble(Object target, double argument) throws InvocationTargetException {
+            if (this.paramType != double.class) {
+                return invoke(target, argument);
+            }
+            try {
+                return (Object) this.primitive.invokeExact(target, argument);
+            }
+            catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+
+        @Override
+        public Object invokeBoolean(Object target, boolean argument) throws InvocationTargetException {
+            if (this.paramType != boolean.class) {
+                return invoke(target, argument);
+            }
+            try {
+                return (Object) this.primitive.invokeExact(target, argument);
+            }
+            catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+    }
+
+    static final class BuildInvoker extends BuildMethodInvoker {
+
+        private final MethodHandle handle;
+
+        BuildInvoker(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public Object invoke(Object target) throws InvocationTargetException {
+            try {
+                return (Object) this.handle.invokeExact(target);
+            }
+            catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.springframework.beans;
+
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Invokers that call the bound method via reflection.
+ *
+ * @see InvocationEngine#REFLECTION
+ */
+final class ReflectiveInvokers {
+
+    private ReflectiveInvokers() {
+    }
+
+    static final class FluentInvoker extends FluentMethodInvoker {
+
+        private final Method method;
+
+        FluentInvoker(Method method) {
+            ReflectionUtils.makeAccessible(method);
+            this.method = method;
+        }
+
+        @Override
+        public Object invoke(Object target, Object argument) throws IllegalAccessException, InvocationTargetException {
+            return this.method.invoke(target, argument);
+        }
+    }
+
+    static final class BuildInvoker extends BuildMethodInvoker {
+
+        private final Method method;
+
+        BuildInvoker(Method method) {
+            ReflectionUtils.makeAccessible(method);
+            this.method = method;
+        }
+
+        @Override
+        public Object invoke(Object target) throws IllegalAccessException, InvocationTargetException {
+            return this.method.invoke(target);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.springframework.beans;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Internal class that holds a bounded number of idle type converters of a {@link FluentBuildPlan} for reuse.</p>
+ *
+ * <p>A bean factory creates a new {@link SimpleTypeConverter} (and registers all of its custom editors with it) every
+ * time one is requested, because type converters are not thread-safe. Values that are converted for every build would
+ * otherwise pay for this, and contend on the JDK's and Spring's synchronized editor lookups, on every build. Instead,
+ * each converter is only used by one thread at a time, and returned to the pool afterwards.</p>
+ *
+ * <p>Only converters used by builds are returned to the pool: values converted once, when a plan is compiled, use a
+ * converter that is discarded afterwards. A plan whose values are all converted up front therefore holds no idle
+ * converter.</p>
+ *
+ * <p>Like the {@link BuilderPool}, the pool is lock-free: each slot holds at most one idle converter, and threads start
+ * their search at a slot derived from their id. When the pool is full, a released converter is simply discarded.</p>
+ */
+final class TypeConverterPool {
+
+    private final BeanFactory beanFactory;
+    private final AtomicReferenceArray<TypeConverter> slots;
+
+    TypeConverterPool(BeanFactory beanFactory, int size) {
+        this.beanFactory = beanFactory;
+        this.slots = new AtomicReferenceArray<TypeConverter>(size);
+    }
+
+    /**
+     * Returns an idle type converter, or a new one if there is none.
+     */
+    TypeConverter acquire() {
+        int size = this.slots.length();
+        int start = firstSlot(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            if (this.slots.get(slot) != null) {
+                TypeConverter typeConverter = this.slots.getAndSet(slot, null);
+                if (typeConverter != null) {
+                    return typeConverter;
+                }
+            }
+        }
+        return (this.beanFactory instanceof ConfigurableBeanFactory)
+                ? ((ConfigurableBeanFactory) this.beanFactory).getTypeConverter()
+                : new SimpleTypeConverter();
+    }
+
+    /**
+     * Returns the type converter to the pool, unless the pool is full.
+     */
+    void release(TypeConverter typeConverter) {
+        int size = this.slots.length();
+        int start = firstSlot(size);
+        for (int i = 0; i < size; i++) {
+            if (this.slots.compareAndSet((start + i) % size, null, typeConverter)) {
+                return;
+            }
+        }
+    }
+
+    private static int firstSlot(int size) {
+        return (int) (Thread.currentThread().getId() % size);
+    }
+}
@@ -0,0 +1,99 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>The threads shared by the asynchronous {@code sg:builder-factory} beans of a bean factory: a pool of as many
+ * daemon threads as there are processors, which runs the builds of all factories without an executor of their own,
+ * and a single daemon thread that times builds out. Neither starts a thread before it is first used, and idle threads
+ * terminate after a minute.</p>
+ *
+ * <p>Each factory {@link #acquire(BeanFactory) acquires} the threads of its bean factory when it is initialised, and
+ * {@link #release() releases} them when it is destroyed. The threads are stopped once the last factory has released
+ * them.</p>
+ */
+final class AsyncBuildExecutors {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    // the threads shared by the factories of each bean factory, and the number of factories using them
+    private static final Map<BeanFactory, AsyncBuildExecutors> sharedExecutors =
+            CacheBuilder.newBuilder().weakKeys().<BeanFactory, AsyncBuildExecutors>build().asMap();
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor timeoutScheduler;
+    private int users;
+
+    private AsyncBuildExecutors() {
+        int poolSize = Runtime.getRuntime().availableProcessors();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("builder-factory-async-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+
+        CustomizableThreadFactory timeoutThreadFactory = new CustomizableThreadFactory("builder-factory-timeout-");
+        timeoutThreadFactory.setDaemon(true);
+        this.timeoutScheduler = new ScheduledThreadPoolExecutor(1, timeoutThreadFactory);
+        this.timeoutScheduler.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        this.timeoutScheduler.allowCoreThreadTimeOut(true);
+        this.timeoutScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns the threads shared by the factories of the given bean factory, which the caller must
+     * {@link #release()} once it no longer uses them.
+     *
+     * @param beanFactory the bean factory, or {@code null} if the caller is used outside of a bean factory, in which
+     * case it does not share its threads
+     */
+    static AsyncBuildExecutors acquire(BeanFactory beanFactory) {
+        if (beanFactory == null) {
+            AsyncBuildExecutors executors = new AsyncBuildExecutors();
+            executors.users = 1;
+            return executors;
+        }
+        synchronized (sharedExecutors) {
+            AsyncBuildExecutors executors = sharedExecutors.get(beanFactory);
+            if (executors == null) {
+                executors = new AsyncBuildExecutors();
+                sharedExecutors.put(beanFactory, executors);
+            }
+            executors.users++;
+            return executors;
+        }
+    }
+
+    /**
+     * Stops the threads, interrupting any builds that are still running on them, if no other factory uses them.
+     */
+    void release() {
+        synchronized (sharedExecutors) {
+            if (--this.users > 0) {
+                return;
+            }
+            // removed by value, as the threads do not reference their bean factory (which would keep it in the cache)
+            sharedExecutors.values().remove(this);
+        }
+        this.executor.shutdownNow();
+        this.timeoutScheduler.shutdownNow();
+    }
+
+    Executor getExecutor() {
+        return this.executor;
+    }
+
+    ScheduledExecutorService getTimeoutScheduler() {
+        return this.timeoutScheduler;
+    }
+}
@@ -0,0 +1,59 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.springframework.aop.TargetSource;
+import org.springframework.beans.factory.BeanCreationException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * <p>{@link TargetSource} whose target is the result of an asynchronous build, which is awaited on each access until it
+ * is available.</p>
+ *
+ * <p>Once the build has completed, obtaining the target does not block. If the build failed, every access reports the
+ * failure.</p>
+ */
+class AsyncBuildTargetSource implements TargetSource {
+
+    private final String beanName;
+    private final Class<?> targetClass;
+    private final Future<Object> future;
+
+    AsyncBuildTargetSource(String beanName, Class<?> targetClass, Future<Object> future) {
+        this.beanName = beanName;
+        this.targetClass = targetClass;
+        this.future = future;
+    }
+
+    @Override
+    public Class<?> getTargetClass() {
+        return this.targetClass;
+    }
+
+    @Override
+    public boolean isStatic() {
+        return false;
+    }
+
+    @Override
+    public Object getTarget() {
+        try {
+            return this.future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BeanCreationException(this.beanName, "Interrupted while awaiting asynchronous build", ex);
+        }
+        catch (ExecutionException ex) {
+            throw new BeanCreationException(this.beanName, "Asynchronous build failed", ex.getCause());
+        }
+        catch (CancellationException ex) {
+            throw new BeanCreationException(this.beanName, "Asynchronous build was cancelled", ex);
+        }
+    }
+
+    @Override
+    public void releaseTarget(Object target) {
+    }
+}
@@ -0,0 +1,117 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.springframework.beans.FluentRecipe;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>Runs the builds of an asynchronous {@code sg:builder-factory} bean on an executor, and exposes each build as a
+ * {@link ListenableFuture}, so that the container (and any bean that does not need the object straight away) does not
+ * have to wait for slow build methods.</p>
+ *
+ * <p>If no executor is given, builds run on the {@link AsyncBuildExecutors threads shared} by the asynchronous
+ * factories of the bean factory, which also time builds out. If a timeout is set, a build that is still running when
+ * it expires is cancelled, interrupting its thread, and its future fails with a {@link TimeoutException}. If a
+ * fallback is set, the future completes with the fallback instead whenever the build fails or times out.</p>
+ *
+ * <p>The bean references of each build are resolved on the calling thread before it is submitted, so the executor only
+ * runs the builder and never accesses the bean factory. Otherwise a build started while the container holds its
+ * singleton lock (i.e. during refresh) would wait for that lock, and so would anything that awaits the build.</p>
+ */
+class AsyncBuilder {
+
+    private final String beanName;
+    private final Executor executor;
+    private final ScheduledExecutorService timeoutScheduler;
+    private final long timeout;
+    private final Object fallback;
+
+    /**
+     * @param executor the executor to run the builds on, or {@code null} to use the shared threads
+     * @param sharedExecutors the threads shared by the asynchronous factories of the bean factory
+     * @param timeout the time in milliseconds after which a build times out, or 0 if builds never time out
+     * @param fallback the object to complete failed builds with, or {@code null} if failures are to be reported
+     */
+    AsyncBuilder(String beanName, Executor executor, AsyncBuildExecutors sharedExecutors, long timeout,
+                 Object fallback) {
+        this.beanName = beanName;
+        this.executor = (executor != null) ? executor : sharedExecutors.getExecutor();
+        this.timeoutScheduler = (timeout > 0) ? sharedExecutors.getTimeoutScheduler() : null;
+        this.timeout = timeout;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Resolves the bean references of the given recipe, and starts a build with it.
+     *
+     * @return the future object, which never fails if a fallback is set
+     */
+    ListenableFuture<Object> submit(FluentRecipe recipe) {
+        final SettableFuture<Object> result = SettableFuture.create();
+        final FluentRecipe resolvedRecipe;
+        try {
+            resolvedRecipe = recipe.withResolvedReferences();
+        }
+        catch (RuntimeException ex) {
+            fail(result, ex);
+            return result;
+        }
+
+        final FutureTask<Void> build = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.set(resolvedRecipe.create());
+                }
+                catch (Throwable ex) {
+                    // the FutureTask would swallow anything not caught here, leaving the future incomplete
+                    fail(result, ex);
+                }
+            }
+        }, null);
+
+        if (this.timeoutScheduler != null) {
+            final ScheduledFuture<?> timeoutTask = this.timeoutScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (fail(result, new TimeoutException("Build of '" + beanName + "' did not complete within "
+                            + timeout + "ms"))) {
+                        build.cancel(true);
+                    }
+                }
+            }, this.timeout, TimeUnit.MILLISECONDS);
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    timeoutTask.cancel(false);
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        try {
+            this.executor.execute(build);
+        }
+        catch (RejectedExecutionException ex) {
+            fail(result, ex);
+        }
+        return result;
+    }
+
+    /**
+     * Completes the future with the fallback, if there is one, or with the given failure otherwise.
+     *
+     * @return whether the future was completed by this call
+     */
+    private boolean fail(SettableFuture<Object> result, Throwable failure) {
+        return (this.fallback != null) ? result.set(this.fallback) : result.setException(failure);
+    }
+}
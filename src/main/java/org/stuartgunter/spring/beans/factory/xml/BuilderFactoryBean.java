@@ -1,13 +1,51 @@
 package org.stuartgunter.spring.beans.factory.xml;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.BeanUtils;
-import org.springframework.beans.FluentBeanWrapper;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.BuildStatistics;
+import org.springframework.beans.FluentBuildPlan;
+import org.springframework.beans.FluentRecipe;
+import org.springframework.beans.FluentReplicaValue;
+import org.springframework.beans.FluentSteps;
 import org.springframework.beans.FluentStyle;
+import org.springframework.beans.InvocationEngine;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.PropertyValues;
+import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.config.AbstractFactoryBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.support.JmxUtils;
+import org.springframework.jmx.support.ObjectNameManager;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringValueResolver;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * <p>This {@link org.springframework.beans.factory.FactoryBean} internally uses the specified builder class
@@ -23,14 +61,96 @@ import java.util.Map;
  * </p>
  *
  * <p>The build method and method prefix can be customised to each use case.</p>
+ *
+ * <p>The builder methods are resolved, and literal values converted, once when this factory is initialised, into a
+ * {@link FluentRecipe} (the same that can be compiled programmatically). Each instance created thereafter only
+ * requires a new builder, the replay of the fluent method invocations and the final invocation of the build
+ * method.</p>
+ *
+ * <p>Builder properties may include the anonymous definitions of nested builder-factories. These are compiled into
+ * this factory's plan, so that their objects are built inline as part of each build, without registering or looking
+ * up any other bean.</p>
+ *
+ * <p>If a {@link #setTemplate(BuilderTemplate) template} is set, the builder, method prefix, fluent style and
+ * invocation engine are taken from the template, and this factory's properties are applied after those of the
+ * template. The template's properties are only compiled once, however many factories refer to it.</p>
+ *
+ * <p>If a {@link #setResetMethod(String) reset method} is set, builders are reset after each build and reused by
+ * later builds, up to the {@link #setBuilderPoolSize(int) pool size}. This is mainly of use for prototypes that are
+ * created at a high rate. Immutable builders are detected on the first build and are never reused.</p>
+ *
+ * <p>If {@link #setStatisticsEnabled(boolean) statistics} are enabled, the counts and timings of each
+ * {@link org.springframework.beans.BuildPhase} are exposed as an MBean named
+ * {@code org.stuartgunter.spring.beans:type=BuilderFactoryBean,name=<bean name>}, or, if that name is already taken
+ * by another context, the same name with an additional {@code identity} key. The phases of a template's own
+ * properties are not included.</p>
+ *
+ * <p>If {@link #setIntern(boolean) interning} is enabled, objects are looked up by the builder, build method and
+ * resolved values before they are built, and equal objects are shared across all interning factories, including those
+ * of other contexts.</p>
+ *
+ * <p>If {@link #setLazyBuild(boolean) lazy building} is enabled, a proxy of the build method's return type is
+ * returned instead, and the builder is only run on the first method invocation on the proxy. A return type that is not
+ * an interface requires CGLIB to be on the classpath, and must not be final.</p>
+ *
+ * <p>If the factory is {@link #setRefreshable(boolean) refreshable}, a proxy of the build method's return type is
+ * returned as well, whose target is rebuilt by a {@link RefreshablePlaceholderConfigurer} whenever a placeholder in
+ * this factory's properties, or a refreshable bean it references, changes. The new target is built before it replaces
+ * the previous one, so a failed rebuild leaves the previous target in place.</p>
+ *
+ * <p>If a number of {@link #setReplicas(int) replicas} is set, an unmodifiable {@link List} of that many objects is
+ * returned instead, each built with the {@value FluentReplicaValue#INDEX_TOKEN} tokens in this factory's own literal
+ * values replaced by its index. The replicas are built concurrently, on up to as many threads as there are processors,
+ * from the same recipe: only the values that contain the token are converted for each replica.</p>
+ *
+ * <p>If the factory is {@link #setAsync(boolean) asynchronous}, a {@link ListenableFuture} of the object (or, if
+ * {@link #setAsyncProxy(boolean) requested}, a proxy of the build method's return type that awaits it) is returned
+ * straight away, and the builder runs on the {@link #setAsyncExecutor(Executor) executor}. The rest of the context can
+ * then be created while slow build methods are still running. A build that exceeds the
+ * {@link #setAsyncTimeout(long) timeout} is cancelled, and a build that fails or times out completes with the
+ * {@link #setAsyncFallback(Object) fallback}, if there is one.</p>
  */
-public class BuilderFactoryBean extends AbstractFactoryBean {
+public class BuilderFactoryBean extends AbstractFactoryBean implements BeanNameAware, ResourceLoaderAware {
+
+    static final String STATISTICS_DOMAIN = "org.stuartgunter.spring.beans";
 
     private Class<?> builderClass;
     private String buildMethod;
     private String methodPrefix;
     private FluentStyle fluentStyle;
-    private Map<String, List<Object>> builderProperties;
+    private InvocationEngine invocationEngine = InvocationEngine.DEFAULT;
+    private String[] stepNames;
+    private Object[] stepValues;
+    private BuilderTemplate template;
+    private boolean lazyBuild;
+    private String resetMethod;
+    private int builderPoolSize = Runtime.getRuntime().availableProcessors();
+    private boolean statisticsEnabled;
+    private boolean intern;
+    private boolean refreshable;
+    private UnresolvedSteps unresolvedSteps;
+    private int replicas;
+    private int replicaParallelism = Runtime.getRuntime().availableProcessors();
+    private boolean async;
+    private boolean asyncProxy;
+    private Executor asyncExecutor;
+    private long asyncTimeout;
+    private Object asyncFallback;
+    private volatile Class<?> objectType;
+
+    private String beanName;
+    private ClassLoader beanClassLoader = ClassUtils.getDefaultClassLoader();
+    private ResourceLoader resourceLoader;
+    private FluentRecipe recipe;
+    private BuildStatistics statistics;
+    private ObjectName statisticsObjectName;
+    private RefreshableTargetSource refreshableTargetSource;
+    private AsyncBuildExecutors asyncBuildExecutors;
+    private AsyncBuilder asyncBuilder;
+
+    // an instance built outside of the container, e.g. by the ParallelBuilderFactoryInitializer
+    private Object prebuiltInstance;
+    private BuildStatistics prebuiltStatistics;
 
     /**
      * The type of builder
@@ -63,40 +183,541 @@ public class BuilderFactoryBean extends AbstractFactoryBean {
     }
 
     /**
-     * The properties to apply to the builder before finally constructing the bean.
+     * The engine used to invoke the builder's fluent methods and build method.
+     * Defaults to {@link InvocationEngine#METHOD_HANDLE}.
+     */
+    public void setInvocationEngine(InvocationEngine invocationEngine) {
+        this.invocationEngine = invocationEngine;
+    }
+
+    /**
+     * The names of the fluent properties/methods of the steps to apply to the builder before finally constructing the
+     * bean, in order.
+     */
+    public void setStepNames(String[] stepNames) {
+        this.stepNames = stepNames;
+    }
+
+    /**
+     * The values of the steps to apply to the builder, in the same order as the {@link #setStepNames(String[]) names}.
+     */
+    public void setStepValues(Object[] stepValues) {
+        this.stepValues = stepValues;
+    }
+
+    /**
+     * The template whose builder and properties are shared by this factory.
+     */
+    public void setTemplate(BuilderTemplate template) {
+        this.template = template;
+    }
+
+    /**
+     * Whether to defer running the builder until the built object is first used. Defaults to {@code false}.
+     */
+    public void setLazyBuild(boolean lazyBuild) {
+        this.lazyBuild = lazyBuild;
+    }
+
+    /**
+     * The name of the method that restores a builder to its initial state, so that it can be reused. The method must
+     * have an arity of 0, and must not affect any object that was previously built. Builders are not reused if no
+     * reset method is set.
+     */
+    public void setResetMethod(String resetMethod) {
+        this.resetMethod = resetMethod;
+    }
+
+    /**
+     * The maximum number of idle builders held for reuse, if a {@link #setResetMethod(String) reset method} is set.
+     * Defaults to the number of available processors.
+     */
+    public void setBuilderPoolSize(int builderPoolSize) {
+        this.builderPoolSize = builderPoolSize;
+    }
+
+    /**
+     * Whether to record the counts and timings of the build phases, and expose them via JMX. Defaults to
+     * {@code false}, in which case no timings are taken at all.
      */
-    public void setBuilderProperties(Map<String, List<Object>> builderProperties) {
-        this.builderProperties = builderProperties;
+    public void setStatisticsEnabled(boolean statisticsEnabled) {
+        this.statisticsEnabled = statisticsEnabled;
+    }
+
+    /**
+     * Whether to share built objects with all other interning factories, in this or any other context, that build an
+     * equal object from the same builder, build method and values. Only suitable for immutable objects. Defaults to
+     * {@code false}.
+     */
+    public void setIntern(boolean intern) {
+        this.intern = intern;
+    }
+
+    /**
+     * Whether the built object may be rebuilt, behind a stable proxy, when the placeholders in its steps change.
+     * Only supported for singletons. Defaults to {@code false}.
+     *
+     * @see RefreshablePlaceholderConfigurer
+     */
+    public void setRefreshable(boolean refreshable) {
+        this.refreshable = refreshable;
+    }
+
+    /**
+     * The steps as they were declared, whose placeholders are resolved again on every refresh.
+     */
+    public void setUnresolvedSteps(UnresolvedSteps unresolvedSteps) {
+        this.unresolvedSteps = unresolvedSteps;
+    }
+
+    /**
+     * The number of objects to build, which are returned as a list in place of a single object. Each object is built
+     * with the {@value FluentReplicaValue#INDEX_TOKEN} tokens in the literal values replaced by its zero-based index.
+     * Must be at least 1. Not supported for lazily built or refreshable factories. By default, a single object is
+     * built, which is not replicated.
+     */
+    public void setReplicas(int replicas) {
+        Assert.isTrue(replicas >= 1, "Replicas must be at least 1, but was " + replicas);
+        this.replicas = replicas;
+    }
+
+    /**
+     * The maximum number of replicas built concurrently. Defaults to the number of available processors. Mainly
+     * intended for testing.
+     */
+    void setReplicaParallelism(int replicaParallelism) {
+        this.replicaParallelism = replicaParallelism;
+    }
+
+    /**
+     * Whether the object is built asynchronously, in which case a {@link ListenableFuture} of it is returned. Not
+     * supported for lazily built, refreshable or replicated factories. Defaults to {@code false}.
+     */
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    /**
+     * Whether an asynchronous factory returns a proxy of the build method's return type, which awaits the object on
+     * each invocation until it has been built, rather than its future. A return type that is not an interface requires
+     * CGLIB to be on the classpath. Defaults to {@code false}.
+     */
+    public void setAsyncProxy(boolean asyncProxy) {
+        this.asyncProxy = asyncProxy;
+    }
+
+    /**
+     * The executor that asynchronous builds run on. Defaults to a pool of as many daemon threads as there are
+     * processors, which is shared by the asynchronous factories of the bean factory.
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * The time in milliseconds after which an asynchronous build is cancelled, and fails with a
+     * {@link java.util.concurrent.TimeoutException}. Defaults to 0, i.e. builds never time out.
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    /**
+     * The object that an asynchronous build completes with if it fails or times out, in place of the failure.
+     */
+    public void setAsyncFallback(Object asyncFallback) {
+        this.asyncFallback = asyncFallback;
+    }
+
+    /**
+     * The return type of the build method, if it is already known (e.g. because it was resolved when the definition
+     * was parsed). Otherwise, it is looked up the first time it is needed.
+     */
+    public void setObjectType(Class<?> objectType) {
+        this.objectType = objectType;
+    }
+
+    /**
+     * Whether the builder is only run when the built object is first used.
+     */
+    public boolean isLazyBuild() {
+        return this.lazyBuild;
+    }
+
+    @Override
+    public void setBeanName(String beanName) {
+        this.beanName = beanName;
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        super.setBeanClassLoader(classLoader);
+        this.beanClassLoader = classLoader;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
     }
 
     @Override
     public Class<?> getObjectType() {
-        return findBuildMethodReturnType();
+        if (this.replicas > 0) {
+            return List.class;
+        }
+        return (this.async && !this.asyncProxy) ? ListenableFuture.class : getBuiltType();
+    }
+
+    private Class<?> getBuiltType() {
+        Class<?> objectType = this.objectType;
+        if (objectType == null) {
+            objectType = findBuildMethodReturnType();
+            this.objectType = objectType;
+        }
+        return objectType;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.state(!refreshable || (isSingleton() && !lazyBuild),
+                "Only eager singletons can be refreshed: " + beanName);
+        Assert.state(replicas == 0 || !(lazyBuild || refreshable),
+                "Replicated objects can neither be built lazily nor refreshed: " + beanName);
+        Assert.state(!async || !(lazyBuild || refreshable || replicas > 0),
+                "Asynchronously built objects can neither be built lazily, refreshed nor replicated: " + beanName);
+        if (lazyBuild || refreshable || (async && asyncProxy)) {
+            assertProxyable(getBuiltType());
+        }
+        if (statisticsEnabled) {
+            this.statistics = (prebuiltStatistics != null) ? prebuiltStatistics : new BuildStatistics();
+        }
+        this.recipe = compileRecipe(getSteps());
+        if (statistics != null) {
+            registerStatistics(statistics);
+        }
+        if (async) {
+            this.asyncBuildExecutors = AsyncBuildExecutors.acquire(getBeanFactory());
+            this.asyncBuilder = new AsyncBuilder(beanName, asyncExecutor, asyncBuildExecutors, asyncTimeout,
+                    asyncFallback);
+        }
+        super.afterPropertiesSet();
+    }
+
+    private FluentSteps getSteps() {
+        return (stepNames != null) ? new FluentSteps(stepNames, stepValues) : FluentSteps.EMPTY;
+    }
+
+    private FluentRecipe compileRecipe(FluentSteps steps) {
+        FluentRecipe recipe = FluentRecipe.of(compileBuildPlan(
+                (replicas > 0) ? withReplicaValues(steps) : steps, statistics));
+        if (resetMethod != null) {
+            recipe = recipe.withBuilderPool(resetMethod, builderPoolSize);
+        }
+        return intern ? recipe.withInterning() : recipe;
+    }
+
+    /**
+     * Replaces the literal values that contain an index token with replica values.
+     */
+    private static FluentSteps withReplicaValues(FluentSteps steps) {
+        Object[] values = steps.getValues();
+        for (int i = 0; i < values.length; i++) {
+            if (FluentReplicaValue.isTemplate(values[i])) {
+                values[i] = new FluentReplicaValue((String) values[i]);
+            }
+        }
+        return steps.withValues(values);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (this.asyncBuildExecutors != null) {
+            this.asyncBuildExecutors.release();
+            this.asyncBuildExecutors = null;
+        }
+        if (this.statisticsObjectName != null) {
+            MBeanServer server = JmxUtils.locateMBeanServer();
+            if (server.isRegistered(this.statisticsObjectName)) {
+                server.unregisterMBean(this.statisticsObjectName);
+            }
+        }
+        super.destroy();
+    }
+
+    /**
+     * Registers the statistics with the MBean server. If statistics are already registered under the same bean name
+     * (e.g. by another context, or the parent of this one), this factory's identity is added to the name, so that
+     * neither context replaces, or later unregisters, the statistics of the other.
+     */
+    private void registerStatistics(BuildStatistics statistics) throws JMException {
+        ObjectName objectName = ObjectNameManager.getInstance(
+                STATISTICS_DOMAIN + ":type=BuilderFactoryBean,name=" + ObjectName.quote(beanName));
+        MBeanServer server = JmxUtils.locateMBeanServer();
+        try {
+            server.registerMBean(statistics, objectName);
+        }
+        catch (InstanceAlreadyExistsException ex) {
+            objectName = JmxUtils.appendIdentityToObjectName(objectName, this);
+            server.registerMBean(statistics, objectName);
+        }
+        this.statisticsObjectName = objectName;
     }
 
     @Override
     protected Object createInstance() throws Exception {
-        Object builder = BeanUtils.instantiate(builderClass);
-        FluentBeanWrapper fluentBeanWrapper = new FluentBeanWrapper(builder, methodPrefix, buildMethod, fluentStyle);
-        fluentBeanWrapper.setBeanFactory(getBeanFactory());
-
-        for (Map.Entry<String, List<Object>> builderProperty : builderProperties.entrySet()) {
-            String propertyname = builderProperty.getKey();
-            for (Object propertyValue : builderProperty.getValue()) {
-                fluentBeanWrapper.setPropertyValue(propertyname, propertyValue);
+        if (this.lazyBuild) {
+            return createProxy(new LazyBuildTargetSource(beanName, getBuiltType(), recipe));
+        }
+        if (this.replicas > 0) {
+            return createReplicas(this.recipe);
+        }
+        if (this.async) {
+            ListenableFuture<Object> future = this.asyncBuilder.submit(this.recipe);
+            return this.asyncProxy
+                    ? createProxy(new AsyncBuildTargetSource(beanName, getBuiltType(), future))
+                    : future;
+        }
+
+        Object instance = this.prebuiltInstance;
+        if (instance != null) {
+            this.prebuiltInstance = null;
+        } else {
+            instance = this.recipe.create();
+        }
+        if (this.refreshable) {
+            this.refreshableTargetSource = new RefreshableTargetSource(getBuiltType(), instance);
+            return createProxy(this.refreshableTargetSource);
+        }
+        return instance;
+    }
+
+    /**
+     * Builds all replicas from the given recipe, concurrently unless there is only one replica or processor. If any
+     * replica fails to be built, the first failure (by index) is thrown once all replicas are done.
+     *
+     * <p>The calling thread holds the container's singleton lock while this factory is being created, so the bean
+     * references of each replica are resolved on the calling thread: a concurrent build that resolved them itself
+     * would wait for that lock forever.</p>
+     */
+    private List<Object> createReplicas(FluentRecipe recipe) throws Exception {
+        Object[] instances = new Object[this.replicas];
+        int parallelism = Math.min(this.replicas, this.replicaParallelism);
+        if (parallelism == 1) {
+            for (int i = 0; i < instances.length; i++) {
+                instances[i] = recipe.forReplica(i).create();
+            }
+            return Collections.unmodifiableList(Arrays.asList(instances));
+        }
+
+        List<Callable<Object>> tasks = Lists.newArrayListWithCapacity(this.replicas);
+        for (int i = 0; i < instances.length; i++) {
+            final int index = i;
+            final FluentRecipe resolvedRecipe = recipe.withResolvedReferences();
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return resolvedRecipe.forReplica(index).create();
+                }
+            });
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("builder-factory-replica-");
+        threadFactory.setDaemon(true);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, threadFactory);
+        try {
+            List<Future<Object>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < instances.length; i++) {
+                instances[i] = results.get(i).get();
+            }
+        }
+        catch (ExecutionException ex) {
+            Throwables.propagateIfPossible(ex.getCause(), Exception.class);
+            throw ex;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return Collections.unmodifiableList(Arrays.asList(instances));
+    }
+
+    /**
+     * Checks that a proxy of the given built type can be created, i.e. that it is an interface or a non-final class,
+     * rather than leaving CGLIB to fail when the first proxy is created.
+     */
+    private void assertProxyable(Class<?> builtType) {
+        Assert.state(builtType != null, "Cannot determine the type built by '" + beanName
+                + "', which is required to proxy it for lazy-build, refreshable or async-proxy");
+        Assert.state(builtType.isInterface() || !Modifier.isFinal(builtType.getModifiers()),
+                "Cannot proxy the final type " + builtType.getName() + " built by '" + beanName
+                        + "': lazy-build, refreshable and async-proxy require the build method to return an interface"
+                        + " or a non-final class");
+    }
+
+    private Object createProxy(TargetSource targetSource) {
+        Class<?> objectType = targetSource.getTargetClass();
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setTargetSource(targetSource);
+        if (objectType.isInterface()) {
+            proxyFactory.addInterface(objectType);
+        } else {
+            proxyFactory.setProxyTargetClass(true);
+        }
+        proxyFactory.setFrozen(true);
+        return proxyFactory.getProxy(beanClassLoader);
+    }
+
+    /**
+     * Whether the built object is rebuilt when its placeholders change.
+     */
+    boolean isRefreshable() {
+        return this.refreshable;
+    }
+
+    /**
+     * Adds the names of the beans referenced by this factory's own steps to the given set.
+     */
+    void collectReferencedBeanNames(Set<String> beanNames) {
+        if (this.unresolvedSteps != null) {
+            this.unresolvedSteps.collectReferencedBeanNames(beanNames);
+        }
+    }
+
+    /**
+     * Resolves the placeholders of the steps as they were declared with the given resolver.
+     */
+    FluentSteps resolveDeclaredSteps(StringValueResolver resolver) {
+        Assert.state(this.unresolvedSteps != null, "Builder-factory is not refreshable: " + beanName);
+        return this.unresolvedSteps.resolve(resolver);
+    }
+
+    /**
+     * Compiles the given steps and builds a new object from them, which then replaces the target of the proxy returned
+     * by this factory. Nothing is replaced if either fails.
+     */
+    synchronized void refresh(FluentSteps steps) throws Exception {
+        Assert.state(this.refreshableTargetSource != null, "Builder-factory has not been initialised: " + beanName);
+        FluentRecipe recipe = compileRecipe(steps);
+        Object target = recipe.create();
+        this.recipe = recipe;
+        this.refreshableTargetSource.swap(target);
+    }
+
+    /**
+     * Supplies an instance that has already been built from this factory's definition, which is returned by the next
+     * call to {@link #createInstance()} instead of building a new one. If statistics are enabled, the statistics
+     * recorded while building it are continued.
+     */
+    void setPrebuiltInstance(Object prebuiltInstance, BuildStatistics prebuiltStatistics) {
+        this.prebuiltInstance = prebuiltInstance;
+        this.prebuiltStatistics = prebuiltStatistics;
+    }
+
+    /**
+     * Builds a single instance from this factory's configuration, but with the given steps, without initialising the
+     * factory itself. The instance is built like {@link #createInstance()} would, e.g. it is interned if requested.
+     */
+    Object buildDetached(FluentSteps steps) throws Exception {
+        this.statistics = statisticsEnabled ? new BuildStatistics() : null;
+        return compileRecipe(steps).create();
+    }
+
+    /**
+     * Returns the statistics recorded by {@link #buildDetached(FluentSteps)}, or {@code null} if they are disabled.
+     */
+    BuildStatistics getDetachedStatistics() {
+        return this.statistics;
+    }
+
+    private FluentBuildPlan compileBuildPlan(FluentSteps steps, BuildStatistics statistics) {
+        steps = resolveSteps(steps);
+        if (template != null) {
+            return template.getBuildPlan().extend(buildMethod, steps, getBeanFactory(), statistics);
+        }
+        return FluentBuildPlan.compile(builderClass, methodPrefix, buildMethod, fluentStyle,
+                invocationEngine, steps, getBeanFactory(), statistics);
+    }
+
+    /**
+     * Replaces the stream definitions among the given steps with their streams, and the definitions of nested
+     * builder-factories with their compiled plans.
+     */
+    private FluentSteps resolveSteps(FluentSteps steps) {
+        ResourceLoader resourceLoader = (this.resourceLoader != null)
+                ? this.resourceLoader
+                : new DefaultResourceLoader(beanClassLoader);
+        steps = ValueStreamDefinition.resolveAll(steps, resourceLoader, getBeanFactory());
+        if (!containsNestedDefinitions(steps)) {
+            return steps;
+        }
+
+        Object[] values = new Object[steps.size()];
+        for (int i = 0; i < values.length; i++) {
+            Object value = steps.getValue(i);
+            values[i] = (value instanceof BeanDefinition)
+                    ? compileNestedBuildPlan((BeanDefinition) value, resourceLoader)
+                    : value;
+        }
+        return steps.withValues(values);
+    }
+
+    /**
+     * Whether any of the given steps is the definition of a nested builder-factory.
+     */
+    static boolean containsNestedDefinitions(FluentSteps steps) {
+        for (int i = 0; i < steps.size(); i++) {
+            if (steps.getValue(i) instanceof BeanDefinition) {
+                return true;
             }
         }
+        return false;
+    }
 
-        return fluentBeanWrapper.build();
+    /**
+     * Returns the steps held by the given definition of a builder-factory (or builder-template).
+     */
+    static FluentSteps getSteps(BeanDefinition definition) {
+        PropertyValues propertyValues = definition.getPropertyValues();
+        PropertyValue names = propertyValues.getPropertyValue("stepNames");
+        PropertyValue values = propertyValues.getPropertyValue("stepValues");
+        return (names != null && values != null)
+                ? new FluentSteps((String[]) names.getValue(), (Object[]) values.getValue())
+                : FluentSteps.EMPTY;
+    }
+
+    /**
+     * Configures a detached factory from the definition of a nested builder-factory, and compiles its plan. The
+     * factory itself is neither registered nor initialised.
+     */
+    private FluentBuildPlan compileNestedBuildPlan(BeanDefinition definition, ResourceLoader resourceLoader) {
+        BuilderFactoryBean factory = new BuilderFactoryBean();
+        BeanWrapper beanWrapper = new BeanWrapperImpl(factory);
+        for (PropertyValue propertyValue : definition.getPropertyValues().getPropertyValues()) {
+            Object value = propertyValue.getValue();
+            if ("builderClass".equals(propertyValue.getName()) && value instanceof String) {
+                value = ClassUtils.resolveClassName((String) value, beanClassLoader);
+            }
+            beanWrapper.setPropertyValue(propertyValue.getName(), value);
+        }
+        factory.setBeanFactory(getBeanFactory());
+        factory.setBeanClassLoader(beanClassLoader);
+        factory.setResourceLoader(resourceLoader);
+        return factory.compileBuildPlan(factory.getSteps(), null);
     }
 
     private Class<?> findBuildMethodReturnType() {
-        if (builderClass == null || buildMethod == null) {
+        Class<?> effectiveBuilderClass = builderClass;
+        String effectiveBuildMethod = buildMethod;
+        if (template != null) {
+            effectiveBuilderClass = template.getBuilderClass();
+            if (effectiveBuildMethod == null) {
+                effectiveBuildMethod = template.getBuildMethod();
+            }
+        }
+        if (effectiveBuilderClass == null || effectiveBuildMethod == null) {
             return null;
         }
 
         try {
-            Method method = BeanUtils.findDeclaredMethod(builderClass, buildMethod, null);
+            Method method = BeanUtils.findDeclaredMethod(effectiveBuilderClass, effectiveBuildMethod, null);
             return (method == null) ? null : method.getReturnType();
         } catch (Exception ex) {
             return null;
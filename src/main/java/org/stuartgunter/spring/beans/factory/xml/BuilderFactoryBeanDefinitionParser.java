@@ -1,24 +1,74 @@
 package org.stuartgunter.spring.beans.factory.xml;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.FluentBuildPlan;
+import org.springframework.beans.FluentSteps;
 import org.springframework.beans.FluentStyle;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.PlaceholderConfigurerSupport;
 import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.AbstractSimpleBeanDefinitionParser;
 import org.springframework.beans.factory.xml.ParserContext;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.util.xml.DomUtils;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
 
+import java.lang.reflect.Method;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
- * This class parses any {@code sg:builder-factory} XML elements in Spring configuration.
+ * <p>This class parses any {@code sg:builder-factory} XML elements in Spring configuration.</p>
+ *
+ * <p>The builder class of each element is loaded, and its build method and the fluent method of each {@code with}
+ * value resolved, while the element is parsed, so that mistakes are reported before any bean is created. The build
+ * method's return type is stored as the factory's object type, and the fluent methods as the
+ * {@link #STEP_METHODS_ATTRIBUTE} attribute of the definition. If any of the attributes that identify these methods
+ * contains a placeholder, they are only resolved at runtime, once the placeholder has been replaced.</p>
+ *
+ * <p>If a factory {@link BuilderFactoryGenerator generated} ahead of time for a definition of the same shape is listed
+ * in an index of generated factories on the classpath, it is used in place of a {@link BuilderFactoryBean}.</p>
  */
 public class BuilderFactoryBeanDefinitionParser extends AbstractSimpleBeanDefinitionParser {
 
+    private static final String[] TEMPLATE_ATTRIBUTES = {
+            "builder-class", "method-prefix", "fluent-style", "invocation-engine"
+    };
+
+    private static final String[] BUILDER_ATTRIBUTES = {
+            "builder-class", "method-prefix", "fluent-style", "build-method"
+    };
+
+    private static final String[] NESTED_UNSUPPORTED_ATTRIBUTES = {
+            "id", "scope", "template", "lazy-build", "reset-method", "builder-pool-size", "statistics", "intern",
+            "refreshable", "replicas", "async", "async-proxy", "async-executor", "async-timeout", "async-fallback"
+    };
+
+    /**
+     * The attribute of a builder-factory (or builder-template) definition that holds the fluent method of each step,
+     * as resolved when the definition was parsed.
+     */
+    public static final String STEP_METHODS_ATTRIBUTE =
+            BuilderFactoryBeanDefinitionParser.class.getName() + ".stepMethods";
+
+    private final boolean useGeneratedFactories;
+
+    public BuilderFactoryBeanDefinitionParser() {
+        this(true);
+    }
+
+    /**
+     * @param useGeneratedFactories whether to use the {@link GeneratedBuilderFactoryBean generated factories} on the
+     * classpath, where available
+     */
+    public BuilderFactoryBeanDefinitionParser(boolean useGeneratedFactories) {
+        this.useGeneratedFactories = useGeneratedFactories;
+    }
+
     @Override
     protected Class<?> getBeanClass(Element element) {
         return BuilderFactoryBean.class;
@@ -26,32 +76,337 @@ public class BuilderFactoryBeanDefinitionParser extends AbstractSimpleBeanDefini
 
     @Override
     protected void doParse(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        configureScope(element, builder);
+        FluentSteps steps = parseSteps(element, parserContext);
+        Class<?> objectType = null;
+        if (StringUtils.hasText(element.getAttribute("builder-class"))
+                && !StringUtils.hasText(element.getAttribute("template"))) {
+            objectType = resolveBuilder(element, parserContext, builder, steps);
+        }
+        if (useGeneratedFactories && configureGeneratedFactory(element, parserContext, builder, steps)) {
+            return;
+        }
+
         configureAttributeForBuilder("target-class", "targetClass", element, builder);
+        configureAttributeForBuilder("lazy-build", "lazyBuild", element, builder);
+        configureAttributeForBuilder("reset-method", "resetMethod", element, builder);
+        configureAttributeForBuilder("builder-pool-size", "builderPoolSize", element, builder);
+        configureAttributeForBuilder("statistics", "statisticsEnabled", element, builder);
+        configureAttributeForBuilder("intern", "intern", element, builder);
+        if (isEnabled(element, "refreshable")) {
+            configureRefreshable(element, parserContext, builder, steps);
+        }
+        if (StringUtils.hasText(element.getAttribute("replicas"))) {
+            configureReplicas(element, parserContext, builder);
+        }
+        if (isEnabled(element, "async")) {
+            configureAsync(element, parserContext, builder);
+        }
+
+        String template = element.getAttribute("template");
+        if (StringUtils.hasText(template)) {
+            configureTemplate(template, element, parserContext, builder);
+        } else {
+            if (!StringUtils.hasText(element.getAttribute("builder-class"))) {
+                parserContext.getReaderContext()
+                        .fatal("A 'builder-factory' element must have either a 'builder-class' or 'template' attribute", element);
+            }
+            configureBuilder(element, builder);
+            if (objectType != null) {
+                builder.addPropertyValue("objectType", objectType);
+            }
+        }
+        addSteps(steps, builder);
+    }
+
+    /**
+     * Loads the builder class, and resolves its build method and the fluent method of each step. All mistakes in the
+     * element are reported together, as a single error.
+     *
+     * @return the return type of the build method, or {@code null} if the element is not valid or the builder is
+     * only known at runtime
+     */
+    protected Class<?> resolveBuilder(Element element, ParserContext parserContext, BeanDefinitionBuilder builder,
+                                      FluentSteps steps) {
+        if (hasPlaceholders(element)) {
+            return null;
+        }
+        String builderClassName = element.getAttribute("builder-class");
+        Class<?> builderClass;
+        try {
+            builderClass = ClassUtils.forName(builderClassName, getBeanClassLoader(parserContext));
+        }
+        catch (Throwable ex) {
+            parserContext.getReaderContext().error("Builder class '" + builderClassName + "' not found", element, ex);
+            return null;
+        }
+
+        Set<String> problems = Sets.newLinkedHashSet();
+        String buildMethodName = getAttribute(element, "build-method", "build");
+        Method buildMethod = BeanUtils.findMethod(builderClass, buildMethodName);
+        if (buildMethod == null) {
+            problems.add("build method '" + buildMethodName + "' not found");
+        }
+        Method[] stepMethods = FluentBuildPlan.findFluentMethods(builderClass,
+                getAttribute(element, "method-prefix", "with"),
+                FluentStyle.valueOf(getAttribute(element, "fluent-style", FluentStyle.PROPERTIES.name())),
+                steps);
+        for (int i = 0; i < stepMethods.length; i++) {
+            if (stepMethods[i] == null) {
+                problems.add("no fluent method for '" + steps.getName(i) + "'");
+            }
+        }
+        if (!problems.isEmpty()) {
+            parserContext.getReaderContext().error("Invalid builder " + builderClassName + ": "
+                    + StringUtils.collectionToDelimitedString(problems, ", "), element);
+            return null;
+        }
+
+        builder.getRawBeanDefinition().setAttribute(STEP_METHODS_ATTRIBUTE, stepMethods);
+        return buildMethod.getReturnType();
+    }
+
+    /**
+     * Uses the factory generated for a definition of this shape, if there is one in the index of generated factories.
+     * The values of the definition are passed to the generated factory in order.
+     *
+     * @return whether a generated factory is used
+     */
+    private boolean configureGeneratedFactory(Element element, ParserContext parserContext,
+                                              BeanDefinitionBuilder builder,
+                                              FluentSteps steps) {
+        if (!StringUtils.hasText(element.getAttribute("builder-class"))
+                || StringUtils.hasText(element.getAttribute("template"))
+                || StringUtils.hasText(element.getAttribute("reset-method"))
+                || isEnabled(element, "lazy-build") || isEnabled(element, "statistics")
+                || isEnabled(element, "intern") || isEnabled(element, "refreshable")
+                || StringUtils.hasText(element.getAttribute("replicas")) || isEnabled(element, "async")
+                || hasPlaceholders(element) || !GeneratedBuilderFactoryBean.supports(steps)) {
+            return false;
+        }
+        Set<String> generatedClassNames =
+                GeneratedBuilderFactoryBean.indexedClassNames(getBeanClassLoader(parserContext));
+        if (generatedClassNames.isEmpty()) {
+            return false;
+        }
+
+        String className = GeneratedBuilderFactoryBean.generatedClassName(
+                element.getAttribute("builder-class"),
+                getAttribute(element, "method-prefix", "with"),
+                getAttribute(element, "fluent-style", FluentStyle.PROPERTIES.name()),
+                getAttribute(element, "build-method", "build"),
+                steps);
+        if (!generatedClassNames.contains(className)) {
+            return false;
+        }
+
+        builder.getRawBeanDefinition().setBeanClassName(className);
+        builder.addPropertyValue("builderValues", steps.getValues());
+        return true;
+    }
+
+    /**
+     * Whether any of the attributes that identify the builder and its methods contains a placeholder.
+     */
+    private static boolean hasPlaceholders(Element element) {
+        for (String attributeName : BUILDER_ATTRIBUTES) {
+            if (containsPlaceholder(element.getAttribute(attributeName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean containsPlaceholder(String value) {
+        return value != null && value.contains(PlaceholderConfigurerSupport.DEFAULT_PLACEHOLDER_PREFIX);
+    }
+
+    private static ClassLoader getBeanClassLoader(ParserContext parserContext) {
+        ClassLoader classLoader = parserContext.getReaderContext().getBeanClassLoader();
+        if (classLoader == null && parserContext.getReaderContext().getResourceLoader() != null) {
+            classLoader = parserContext.getReaderContext().getResourceLoader().getClassLoader();
+        }
+        return (classLoader != null) ? classLoader : ClassUtils.getDefaultClassLoader();
+    }
+
+    private static String getAttribute(Element element, String attributeName, String defaultValue) {
+        String attributeValue = element.getAttribute(attributeName);
+        return StringUtils.hasText(attributeValue) ? attributeValue : defaultValue;
+    }
+
+    private static boolean isEnabled(Element element, String attributeName) {
+        String attributeValue = element.getAttribute(attributeName);
+        return "true".equals(attributeValue) || "1".equals(attributeValue);
+    }
+
+    /**
+     * Refreshable factories keep their builder properties as they were declared, before any placeholders are resolved,
+     * so that they can be resolved again later.
+     */
+    private void configureRefreshable(Element element, ParserContext parserContext, BeanDefinitionBuilder builder,
+                                      FluentSteps steps) {
+        String scope = element.getAttribute("scope");
+        if ((StringUtils.hasText(scope) && !BeanDefinition.SCOPE_SINGLETON.equals(scope))
+                || isEnabled(element, "lazy-build")) {
+            parserContext.getReaderContext().fatal("A refreshable 'builder-factory' element must be an eager " +
+                    "singleton, and must not have a 'lazy-build' attribute", element);
+        }
+        if (BuilderFactoryBean.containsNestedDefinitions(steps)) {
+            parserContext.getReaderContext().fatal("A refreshable 'builder-factory' element must not contain " +
+                    "nested 'builder-factory' elements", element);
+        }
+        builder.addPropertyValue("refreshable", true);
+        builder.addPropertyValue("unresolvedSteps", new UnresolvedSteps(steps));
+    }
+
+    /**
+     * Replicated factories build all of their objects at once, so they can neither be built lazily nor refreshed.
+     */
+    private void configureReplicas(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        if (isEnabled(element, "lazy-build") || isEnabled(element, "refreshable")) {
+            parserContext.getReaderContext().fatal("A 'builder-factory' element with a 'replicas' attribute must " +
+                    "not have a 'lazy-build' or 'refreshable' attribute", element);
+        }
+        String replicas = element.getAttribute("replicas");
+        if (!containsPlaceholder(replicas) && !isPositiveInteger(replicas)) {
+            parserContext.getReaderContext().fatal("The 'replicas' attribute of a 'builder-factory' element must be " +
+                    "a number of at least 1, but was '" + replicas + "'", element);
+        }
+        configureAttributeForBuilder("replicas", "replicas", element, builder);
+    }
+
+    private static boolean isPositiveInteger(String value) {
+        try {
+            return Integer.parseInt(value.trim()) >= 1;
+        }
+        catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Asynchronous factories return a future (or a proxy that awaits it), so they can neither be built lazily,
+     * refreshed nor replicated. The executor and fallback are references to other beans.
+     */
+    private void configureAsync(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        if (isEnabled(element, "lazy-build") || isEnabled(element, "refreshable")
+                || StringUtils.hasText(element.getAttribute("replicas"))) {
+            parserContext.getReaderContext().fatal("An asynchronous 'builder-factory' element must not have a " +
+                    "'lazy-build', 'refreshable' or 'replicas' attribute", element);
+        }
+        builder.addPropertyValue("async", true);
+        configureAttributeForBuilder("async-proxy", "asyncProxy", element, builder);
+        configureAttributeForBuilder("async-timeout", "asyncTimeout", element, builder);
+        if (StringUtils.hasText(element.getAttribute("async-executor"))) {
+            builder.addPropertyReference("asyncExecutor", element.getAttribute("async-executor"));
+        }
+        if (StringUtils.hasText(element.getAttribute("async-fallback"))) {
+            builder.addPropertyReference("asyncFallback", element.getAttribute("async-fallback"));
+        }
+    }
+
+    /**
+     * The builder, method prefix, fluent style and invocation engine of a factory are defined by its template. Only the
+     * build method may be overridden, and only if it is specified explicitly.
+     */
+    private void configureTemplate(String template, Element element, ParserContext parserContext,
+                                   BeanDefinitionBuilder builder) {
+        for (String attributeName : TEMPLATE_ATTRIBUTES) {
+            if (isSpecified(element, attributeName)) {
+                parserContext.getReaderContext().fatal("A 'builder-factory' element with a 'template' attribute " +
+                        "must not have a '" + attributeName + "' attribute", element);
+            }
+        }
+        builder.addPropertyReference("template", template);
+        if (isSpecified(element, "build-method")) {
+            configureAttributeForBuilder("build-method", "buildMethod", element, builder);
+        }
+    }
+
+    /**
+     * Whether the attribute is present in the document, rather than defaulted by the schema.
+     */
+    private static boolean isSpecified(Element element, String attributeName) {
+        Attr attribute = element.getAttributeNode(attributeName);
+        return attribute != null && attribute.getSpecified();
+    }
+
+    protected void configureBuilder(Element element, BeanDefinitionBuilder builder) {
         configureAttributeForBuilder("fluent-style", "fluentStyle", FluentStyle.PROPERTIES, element, builder);
         configureAttributeForBuilder("builder-class", "builderClass", element, builder);
         configureAttributeForBuilder("method-prefix", "methodPrefix", "with", element, builder);
         configureAttributeForBuilder("build-method", "buildMethod", "build", element, builder);
+        configureAttributeForBuilder("invocation-engine", "invocationEngine", element, builder);
+    }
 
-        Map<String, List<Object>> builderProperties = Maps.newHashMap();
-        List<Element> properties = DomUtils.getChildElementsByTagName(element, "with");
-        for (Element property : properties) {
-            String name = property.getAttribute("name");
-            List<Object> values = builderProperties.get(name);
-            if (values == null) {
-                values = Lists.newArrayList();
-                builderProperties.put(name, values);
-            }
-            values.add(createBuilderProperty(property, parserContext));
+    protected FluentSteps configureSteps(Element element, ParserContext parserContext,
+                                         BeanDefinitionBuilder builder) {
+        FluentSteps steps = parseSteps(element, parserContext);
+        addSteps(steps, builder);
+        return steps;
+    }
+
+    /**
+     * Collects the names and values of the {@code with} and {@code with-stream} elements, in the order in which they
+     * are declared. The names are interned, as the same few names recur across many definitions.
+     */
+    private FluentSteps parseSteps(Element element, ParserContext parserContext) {
+        List<Element> properties = DomUtils.getChildElementsByTagName(element, new String[] {"with", "with-stream"});
+        String[] names = new String[properties.size()];
+        Object[] values = new Object[properties.size()];
+        for (int i = 0; i < names.length; i++) {
+            Element property = properties.get(i);
+            names[i] = property.getAttribute("name").intern();
+            values[i] = createBuilderProperty(property, parserContext);
+        }
+        return new FluentSteps(names, values);
+    }
+
+    /**
+     * The steps are held in the definition as parallel arrays of names and values. Placeholder configurers resolve the
+     * literal values in place, whereas bean references and nested definitions are resolved by the factory itself.
+     */
+    private static void addSteps(FluentSteps steps, BeanDefinitionBuilder builder) {
+        builder.addPropertyValue("stepNames", steps.getNames());
+        builder.addPropertyValue("stepValues", steps.getValues());
+    }
+
+    /**
+     * Prototypes are created by a single (singleton) factory, so that the builder is only introspected once. Any other
+     * scope is applied to the factory itself, which then creates one instance per scope.
+     */
+    private void configureScope(Element element, BeanDefinitionBuilder builder) {
+        String scope = element.getAttribute("scope");
+        if (BeanDefinition.SCOPE_PROTOTYPE.equals(scope)) {
+            builder.addPropertyValue("singleton", false);
+        } else if (StringUtils.hasText(scope)) {
+            builder.setScope(scope);
         }
-        builder.addPropertyValue("builderProperties", builderProperties);
     }
 
     private Object createBuilderProperty(Element property, ParserContext parserContext) {
+        if ("with-stream".equals(parserContext.getDelegate().getLocalName(property))) {
+            String encoding = property.getAttribute("encoding");
+            String delimiter = property.getAttribute("delimiter");
+            return new ValueStreamDefinition(property.getAttribute("resource"),
+                    StringUtils.hasText(encoding) ? encoding : "UTF-8",
+                    StringUtils.hasLength(delimiter) ? delimiter : null);
+        }
+
         if (property.hasAttribute("value") && property.hasAttribute("ref")) {
             parserContext.getReaderContext()
                     .fatal("A 'with' element may either have a 'value' or 'ref' attribute, but not both", property);
         }
 
+        Element nestedElement = DomUtils.getChildElementByTagName(property, "builder-factory");
+        if (nestedElement != null) {
+            if (property.hasAttribute("value") || property.hasAttribute("ref")) {
+                parserContext.getReaderContext().fatal("A 'with' element with a nested 'builder-factory' must not " +
+                        "have a 'value' or 'ref' attribute", property);
+            }
+            return parseNestedBuilderFactory(nestedElement, parserContext);
+        }
+
         if (property.hasAttribute("value")) {
             return property.getAttribute("value");
         } else {
@@ -59,16 +414,44 @@ public class BuilderFactoryBeanDefinitionParser extends AbstractSimpleBeanDefini
         }
     }
 
-    private void configureAttributeForBuilder(String attributeName, String propertyName,
-                                              Element element, BeanDefinitionBuilder builder) {
+    /**
+     * Parses a builder-factory nested in a {@code with} element into an anonymous definition, which is never
+     * registered. It is compiled into the build plan of the enclosing factory instead.
+     */
+    private BeanDefinition parseNestedBuilderFactory(Element element, ParserContext parserContext) {
+        for (String attributeName : NESTED_UNSUPPORTED_ATTRIBUTES) {
+            if (isSpecified(element, attributeName)) {
+                parserContext.getReaderContext().fatal("A nested 'builder-factory' element must not have a '"
+                        + attributeName + "' attribute", element);
+            }
+        }
+        if (!StringUtils.hasText(element.getAttribute("builder-class"))) {
+            parserContext.getReaderContext()
+                    .fatal("A nested 'builder-factory' element must have a 'builder-class' attribute", element);
+        }
+
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(BuilderFactoryBean.class);
+        configureBuilder(element, builder);
+        FluentSteps steps = configureSteps(element, parserContext, builder);
+        if (StringUtils.hasText(element.getAttribute("builder-class"))) {
+            Class<?> objectType = resolveBuilder(element, parserContext, builder, steps);
+            if (objectType != null) {
+                builder.addPropertyValue("objectType", objectType);
+            }
+        }
+        return builder.getBeanDefinition();
+    }
+
+    protected void configureAttributeForBuilder(String attributeName, String propertyName,
+                                                Element element, BeanDefinitionBuilder builder) {
         String attributeValue = element.getAttribute(attributeName);
         if (StringUtils.hasText(attributeValue)) {
             builder.addPropertyValue(propertyName, attributeValue);
         }
     }
 
-    private void configureAttributeForBuilder(String attributeName, String propertyName, Object defaultValue,
-                                              Element element, BeanDefinitionBuilder builder) {
+    protected void configureAttributeForBuilder(String attributeName, String propertyName, Object defaultValue,
+                                                Element element, BeanDefinitionBuilder builder) {
         String attributeValue = element.getAttribute(attributeName);
         Object value = StringUtils.hasText(attributeValue) ? attributeValue : defaultValue;
         builder.addPropertyValue(propertyName, value);
@@ -0,0 +1,333 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.FluentBuildPlan;
+import org.springframework.beans.FluentSteps;
+import org.springframework.beans.FluentStyle;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.DefaultNamespaceHandlerResolver;
+import org.springframework.beans.factory.xml.NamespaceHandler;
+import org.springframework.beans.factory.xml.NamespaceHandlerResolver;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Generates the source of a {@link GeneratedBuilderFactoryBean} for each {@code sg:builder-factory} definition in
+ * the given XML configuration. When a generated factory is on the classpath, and listed in the index, the
+ * {@link BuilderFactoryBeanDefinitionParser} uses it in place of a {@link BuilderFactoryBean}, so that the builder is
+ * neither introspected nor invoked reflectively at runtime. Otherwise, the definition falls back to a
+ * {@link BuilderFactoryBean}.</p>
+ *
+ * <p>The generator is intended to be run as part of the build, e.g. via the {@code exec-maven-plugin}, with the
+ * builder classes on its classpath:</p>
+ *
+ * <pre>
+ * java org.stuartgunter.spring.beans.factory.xml.BuilderFactoryGenerator &lt;output directory&gt; &lt;location&gt;...
+ * </pre>
+ *
+ * <p>The class names of the generated factories are listed in an index,
+ * {@value GeneratedBuilderFactoryBean#INDEX_LOCATION}, in the output directory, which must be on the runtime classpath
+ * as well: the parser only looks for generated factories that are listed in an index. Factories listed by an existing
+ * index in the output directory are kept in it.</p>
+ *
+ * <p>Factories are generated per shape of definition (see {@link GeneratedBuilderFactoryBean}), so definitions that
+ * only differ in their values share a generated factory. No factory is generated for definitions that use a template,
+ * streamed values, nested builder-factories, lazy building, builder reuse, statistics, interning, refreshing,
+ * replicas or asynchronous building, whose builder or methods are named by placeholders, or whose builder, constructor
+ * or methods are not public.</p>
+ */
+public class BuilderFactoryGenerator {
+
+    private static final String INDENT = "    ";
+
+    private final ClassLoader classLoader;
+
+    public BuilderFactoryGenerator() {
+        this(ClassUtils.getDefaultClassLoader());
+    }
+
+    public BuilderFactoryGenerator(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: " + BuilderFactoryGenerator.class.getName()
+                    + " <output directory> <location>...");
+            System.exit(1);
+        }
+
+        List<File> files = new BuilderFactoryGenerator()
+                .generate(new File(args[0]), Arrays.copyOfRange(args, 1, args.length));
+        for (File file : files) {
+            System.out.println("Generated " + file);
+        }
+    }
+
+    /**
+     * Generates the factories for all eligible definitions in the given XML configuration, and adds them to the index
+     * in the output directory.
+     *
+     * @param outputDirectory the root directory of the generated sources
+     * @param locations the locations of the XML configuration, e.g. {@code classpath:context.xml}
+     * @return the source files written
+     */
+    public List<File> generate(File outputDirectory, String... locations) throws IOException {
+        Map<String, String> sources = generateSources(locations);
+
+        List<File> files = Lists.newArrayList();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            File file = new File(outputDirectory, source.getKey().replace('.', File.separatorChar) + ".java");
+            Files.createParentDirs(file);
+            Files.write(source.getValue(), file, Charsets.UTF_8);
+            files.add(file);
+        }
+        writeIndex(new File(outputDirectory, GeneratedBuilderFactoryBean.INDEX_LOCATION), sources.keySet());
+        return files;
+    }
+
+    /**
+     * Writes the index of generated factories, keeping the factories listed by an existing index (e.g. those generated
+     * from other locations by a previous run).
+     */
+    private static void writeIndex(File index, Set<String> classNames) throws IOException {
+        Set<String> indexedClassNames = Sets.newTreeSet(classNames);
+        if (index.exists()) {
+            for (String line : Files.readLines(index, Charsets.UTF_8)) {
+                if (StringUtils.hasText(line)) {
+                    indexedClassNames.add(line.trim());
+                }
+            }
+        }
+        Files.createParentDirs(index);
+        Files.write(StringUtils.collectionToDelimitedString(indexedClassNames, "\n") + "\n", index, Charsets.UTF_8);
+    }
+
+    /**
+     * Generates the source of the factories for all eligible definitions in the given XML configuration.
+     *
+     * @return the generated sources, keyed by fully qualified class name
+     */
+    Map<String, String> generateSources(String... locations) {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.setBeanClassLoader(classLoader);
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(beanFactory);
+        reader.setResourceLoader(new DefaultResourceLoader(classLoader));
+        reader.setNamespaceHandlerResolver(new ReflectiveNamespaceHandlerResolver(classLoader));
+        reader.loadBeanDefinitions(locations);
+
+        Map<String, String> sources = Maps.newTreeMap();
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+            if (BuilderFactoryBean.class.getName().equals(definition.getBeanClassName())) {
+                generateSource(beanName, definition, sources);
+            }
+        }
+        return sources;
+    }
+
+    private void generateSource(String beanName, BeanDefinition definition, Map<String, String> sources) {
+        FluentSteps steps = BuilderFactoryBean.getSteps(definition);
+        if (hasProperty(definition, "template") || isEnabled(definition, "lazyBuild")
+                || hasProperty(definition, "resetMethod") || isEnabled(definition, "statisticsEnabled")
+                || isEnabled(definition, "intern") || isEnabled(definition, "refreshable")
+                || hasProperty(definition, "replicas") || isEnabled(definition, "async")
+                || !GeneratedBuilderFactoryBean.supports(steps)) {
+            return;
+        }
+
+        String builderClassName = getProperty(definition, "builderClass");
+        String methodPrefix = getProperty(definition, "methodPrefix");
+        String fluentStyle = getProperty(definition, "fluentStyle");
+        String buildMethodName = getProperty(definition, "buildMethod");
+        for (String value : new String[] {builderClassName, methodPrefix, fluentStyle, buildMethodName}) {
+            if (BuilderFactoryBeanDefinitionParser.containsPlaceholder(value)) {
+                return;
+            }
+        }
+
+        String className = GeneratedBuilderFactoryBean.generatedClassName(
+                builderClassName, methodPrefix, fluentStyle, buildMethodName, steps);
+        if (sources.containsKey(className)) {
+            return;
+        }
+
+        Class<?> builderClass = ClassUtils.resolveClassName(builderClassName, classLoader);
+        Method buildMethod = BeanUtils.findMethod(builderClass, buildMethodName);
+        Method[] stepMethods =
+                (Method[]) definition.getAttribute(BuilderFactoryBeanDefinitionParser.STEP_METHODS_ATTRIBUTE);
+        List<Method> fluentMethods = (stepMethods != null) ? Arrays.asList(stepMethods)
+                : FluentBuildPlan.resolveFluentMethods(
+                        builderClass, methodPrefix, FluentStyle.valueOf(fluentStyle), steps);
+        if (buildMethod == null || !isAccessible(builderClass, fluentMethods, buildMethod)) {
+            return;
+        }
+
+        sources.put(className, generateSource(beanName, className, builderClass, fluentMethods, buildMethod));
+    }
+
+    private String generateSource(String beanName, String className, Class<?> builderClass,
+                                  List<Method> fluentMethods, Method buildMethod) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(ClassUtils.getPackageName(className)).append(";\n\n");
+        source.append("/**\n");
+        source.append(" * Generated by ").append(getClass().getName()).append(" from builder-factory '")
+                .append(beanName).append("'. Do not edit.\n");
+        source.append(" */\n");
+        source.append("public final class ").append(ClassUtils.getShortName(className))
+                .append(" extends ").append(GeneratedBuilderFactoryBean.class.getName()).append(" {\n\n");
+
+        source.append(INDENT).append("private static final Class<?>[] PARAMETER_TYPES = {");
+        for (int i = 0; i < fluentMethods.size(); i++) {
+            source.append((i == 0) ? "\n" : ",\n").append(INDENT).append(INDENT).append(INDENT)
+                    .append(fluentMethods.get(i).getParameterTypes()[0].getCanonicalName()).append(".class");
+        }
+        source.append("\n").append(INDENT).append("};\n\n");
+
+        source.append(INDENT).append("private static final String[] METHOD_NAMES = {");
+        for (int i = 0; i < fluentMethods.size(); i++) {
+            source.append((i == 0) ? "\n" : ",\n").append(INDENT).append(INDENT).append(INDENT)
+                    .append('"').append(fluentMethods.get(i).getName()).append('"');
+        }
+        source.append("\n").append(INDENT).append("};\n\n");
+
+        source.append(INDENT).append("@Override\n");
+        source.append(INDENT).append("public Class<?> getObjectType() {\n");
+        source.append(INDENT).append(INDENT).append("return ")
+                .append(ClassUtils.resolvePrimitiveIfNecessary(buildMethod.getReturnType()).getCanonicalName())
+                .append(".class;\n");
+        source.append(INDENT).append("}\n\n");
+
+        source.append(INDENT).append("@Override\n");
+        source.append(INDENT).append("protected Class<?> getBuilderClass() {\n");
+        source.append(INDENT).append(INDENT).append("return ")
+                .append(builderClass.getCanonicalName()).append(".class;\n");
+        source.append(INDENT).append("}\n\n");
+
+        source.append(INDENT).append("@Override\n");
+        source.append(INDENT).append("protected String[] getMethodNames() {\n");
+        source.append(INDENT).append(INDENT).append("return METHOD_NAMES;\n");
+        source.append(INDENT).append("}\n\n");
+
+        source.append(INDENT).append("@Override\n");
+        source.append(INDENT).append("protected Class<?>[] getParameterTypes() {\n");
+        source.append(INDENT).append(INDENT).append("return PARAMETER_TYPES;\n");
+        source.append(INDENT).append("}\n\n");
+
+        source.append(INDENT).append("@Override\n");
+        source.append(INDENT).append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        source.append(INDENT).append("protected Object build(Object[] values) throws Exception {\n");
+        source.append(INDENT).append(INDENT).append("return new ")
+                .append(builderClass.getCanonicalName()).append("()");
+        for (int i = 0; i < fluentMethods.size(); i++) {
+            Method method = fluentMethods.get(i);
+            source.append("\n").append(INDENT).append(INDENT).append(INDENT).append(INDENT)
+                    .append('.').append(method.getName()).append('(')
+                    .append(argument(method.getParameterTypes()[0], i)).append(')');
+        }
+        source.append("\n").append(INDENT).append(INDENT).append(INDENT).append(INDENT)
+                .append('.').append(buildMethod.getName()).append("();\n");
+        source.append(INDENT).append("}\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Casts the value to the exact parameter type (unboxing primitives), so that overloaded methods are resolved to
+     * the same method as at runtime.
+     */
+    private static String argument(Class<?> parameterType, int index) {
+        String value = "values[" + index + "]";
+        if (parameterType.isPrimitive()) {
+            String wrapperType = ClassUtils.resolvePrimitiveIfNecessary(parameterType).getName();
+            return "((" + wrapperType + ") " + value + ")." + parameterType.getName() + "Value()";
+        }
+        return "(" + parameterType.getCanonicalName() + ") " + value;
+    }
+
+    private static boolean isAccessible(Class<?> builderClass, List<Method> fluentMethods, Method buildMethod) {
+        Constructor<?> constructor = ClassUtils.getConstructorIfAvailable(builderClass);
+        if (!isAccessible(builderClass) || constructor == null || !Modifier.isPublic(constructor.getModifiers())
+                || !isAccessible(buildMethod) || !isAccessible(buildMethod.getReturnType())) {
+            return false;
+        }
+        for (Method method : fluentMethods) {
+            if (!isAccessible(method) || !isAccessible(method.getParameterTypes()[0])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAccessible(Method method) {
+        return Modifier.isPublic(method.getModifiers()) && isAccessible(method.getDeclaringClass());
+    }
+
+    private static boolean isAccessible(Class<?> type) {
+        if (type.isArray()) {
+            return isAccessible(type.getComponentType());
+        }
+        for (Class<?> current = type; current != null; current = current.getEnclosingClass()) {
+            if (!current.isPrimitive() && (!Modifier.isPublic(current.getModifiers())
+                    || current.getCanonicalName() == null)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasProperty(BeanDefinition definition, String propertyName) {
+        return definition.getPropertyValues().contains(propertyName);
+    }
+
+    private static boolean isEnabled(BeanDefinition definition, String propertyName) {
+        return hasProperty(definition, propertyName) && Boolean.parseBoolean(getProperty(definition, propertyName));
+    }
+
+    private static String getProperty(BeanDefinition definition, String propertyName) {
+        PropertyValue propertyValue = definition.getPropertyValues().getPropertyValue(propertyName);
+        return String.valueOf(propertyValue.getValue());
+    }
+
+    /**
+     * Parses the {@code sg} namespace without picking up any factories generated previously.
+     */
+    private static class ReflectiveNamespaceHandlerResolver implements NamespaceHandlerResolver {
+
+        private final NamespaceHandlerResolver delegate;
+        private final NamespaceHandler namespaceHandler;
+
+        ReflectiveNamespaceHandlerResolver(ClassLoader classLoader) {
+            this.delegate = new DefaultNamespaceHandlerResolver(classLoader);
+            SpringNamespaceHandler namespaceHandler = new SpringNamespaceHandler(false);
+            namespaceHandler.init();
+            this.namespaceHandler = namespaceHandler;
+        }
+
+        @Override
+        public NamespaceHandler resolve(String namespaceUri) {
+            return SpringNamespaceHandler.NAMESPACE_URI.equals(namespaceUri)
+                    ? this.namespaceHandler
+                    : this.delegate.resolve(namespaceUri);
+        }
+    }
+}
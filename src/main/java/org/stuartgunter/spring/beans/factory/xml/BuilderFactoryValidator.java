@@ -0,0 +1,147 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import com.google.common.collect.Lists;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.parsing.Location;
+import org.springframework.beans.factory.parsing.Problem;
+import org.springframework.beans.factory.parsing.ProblemReporter;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Validates the {@code sg:builder-factory} and {@code sg:builder-template} definitions in the given XML
+ * configuration, without creating any beans. Each location is parsed independently and in parallel, and all the
+ * problems found are reported together, rather than failing on the first one.</p>
+ *
+ * <p>The validator is intended to be run as part of the build, e.g. via the {@code exec-maven-plugin}, with the
+ * builder classes on its classpath:</p>
+ *
+ * <pre>
+ * java org.stuartgunter.spring.beans.factory.xml.BuilderFactoryValidator &lt;location&gt;...
+ * </pre>
+ *
+ * <p>Problems are only detected as far as the {@link BuilderFactoryBeanDefinitionParser} detects them: unknown
+ * builder classes, build methods and fluent methods, and invalid attributes. References to other beans and the types
+ * of values are not checked.</p>
+ */
+public class BuilderFactoryValidator {
+
+    private final ClassLoader classLoader;
+    private final int parallelism;
+
+    public BuilderFactoryValidator() {
+        this(ClassUtils.getDefaultClassLoader(), Runtime.getRuntime().availableProcessors());
+    }
+
+    public BuilderFactoryValidator(ClassLoader classLoader, int parallelism) {
+        Assert.isTrue(parallelism > 0, "Parallelism must be positive");
+        this.classLoader = classLoader;
+        this.parallelism = parallelism;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: " + BuilderFactoryValidator.class.getName() + " <location>...");
+            System.exit(1);
+        }
+
+        List<Problem> problems = new BuilderFactoryValidator().validate(args);
+        for (Problem problem : problems) {
+            System.err.println(problem);
+        }
+        System.exit(problems.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Validates the definitions in the given XML configuration.
+     *
+     * @param locations the locations of the XML configuration, e.g. {@code classpath:context.xml}
+     * @return the problems found, in the order of the locations
+     */
+    public List<Problem> validate(String... locations) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("builder-factory-validation-");
+        threadFactory.setDaemon(true);
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(parallelism, Math.max(locations.length, 1)), threadFactory);
+        try {
+            List<Future<List<Problem>>> results = Lists.newArrayList();
+            for (final String location : locations) {
+                results.add(executor.submit(new Callable<List<Problem>>() {
+                    @Override
+                    public List<Problem> call() {
+                        return validate(location);
+                    }
+                }));
+            }
+
+            List<Problem> problems = Lists.newArrayList();
+            for (Future<List<Problem>> result : results) {
+                problems.addAll(result.get());
+            }
+            return problems;
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating", ex);
+        }
+        catch (ExecutionException ex) {
+            throw new IllegalStateException("Validation failed", ex.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Problem> validate(String location) {
+        ResourceLoader resourceLoader = new DefaultResourceLoader(classLoader);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.setBeanClassLoader(classLoader);
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(beanFactory);
+        reader.setResourceLoader(resourceLoader);
+        reader.setBeanClassLoader(classLoader);
+        CollectingProblemReporter problemReporter = new CollectingProblemReporter();
+        reader.setProblemReporter(problemReporter);
+
+        Resource resource = resourceLoader.getResource(location);
+        try {
+            reader.loadBeanDefinitions(resource);
+        }
+        catch (BeanDefinitionStoreException ex) {
+            problemReporter.error(new Problem(ex.getMessage(), new Location(resource), null, ex));
+        }
+        return problemReporter.problems;
+    }
+
+    private static class CollectingProblemReporter implements ProblemReporter {
+
+        private final List<Problem> problems = Collections.synchronizedList(Lists.<Problem>newArrayList());
+
+        @Override
+        public void fatal(Problem problem) {
+            this.problems.add(problem);
+        }
+
+        @Override
+        public void error(Problem problem) {
+            this.problems.add(problem);
+        }
+
+        @Override
+        public void warning(Problem problem) {
+        }
+    }
+}
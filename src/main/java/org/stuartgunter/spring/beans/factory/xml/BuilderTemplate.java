@@ -0,0 +1,121 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.springframework.beans.FluentBuildPlan;
+import org.springframework.beans.FluentSteps;
+import org.springframework.beans.FluentStyle;
+import org.springframework.beans.InvocationEngine;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * <p>The shared configuration of a number of {@link BuilderFactoryBean}s that use the same builder. The builder
+ * methods of the template's properties are resolved, and their literal values converted, once when the template is
+ * initialised. Each factory that refers to the template only compiles its own properties, which are applied after
+ * those of the template.</p>
+ *
+ * <p>The builder class, method prefix, fluent style and invocation engine are defined by the template alone. The build
+ * method may be overridden by each factory.</p>
+ */
+public class BuilderTemplate implements BeanFactoryAware, ResourceLoaderAware, InitializingBean {
+
+    private Class<?> builderClass;
+    private String buildMethod;
+    private String methodPrefix;
+    private FluentStyle fluentStyle;
+    private InvocationEngine invocationEngine = InvocationEngine.DEFAULT;
+    private String[] stepNames;
+    private Object[] stepValues;
+
+    private BeanFactory beanFactory;
+    private ResourceLoader resourceLoader = new DefaultResourceLoader();
+    private FluentBuildPlan buildPlan;
+
+    /**
+     * The type of builder
+     */
+    public void setBuilderClass(Class<?> builderClass) {
+        this.builderClass = builderClass;
+    }
+
+    /**
+     * The name of the build method, unless overridden by the factory.
+     * Defaults to {@code build}.
+     */
+    public void setBuildMethod(String buildMethod) {
+        this.buildMethod = buildMethod;
+    }
+
+    /**
+     * The name of the builder method prefix. This is the prefix applied to all methods that set properties on the builder.
+     * Defaults to {@code with}.
+     */
+    public void setMethodPrefix(String methodPrefix) {
+        this.methodPrefix = methodPrefix;
+    }
+
+    /**
+     * The fluent style of the bean. This determines how the appropriate methods on the target bean class are discovered.
+     */
+    public void setFluentStyle(FluentStyle fluentStyle) {
+        this.fluentStyle = fluentStyle;
+    }
+
+    /**
+     * The engine used to invoke the builder's fluent methods and build method.
+     * Defaults to {@link InvocationEngine#METHOD_HANDLE}.
+     */
+    public void setInvocationEngine(InvocationEngine invocationEngine) {
+        this.invocationEngine = invocationEngine;
+    }
+
+    /**
+     * The names of the fluent properties/methods of the steps shared by all factories that refer to this template, in
+     * order.
+     */
+    public void setStepNames(String[] stepNames) {
+        this.stepNames = stepNames;
+    }
+
+    /**
+     * The values of the shared steps, in the same order as the {@link #setStepNames(String[]) names}.
+     */
+    public void setStepValues(Object[] stepValues) {
+        this.stepValues = stepValues;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        FluentSteps steps = (stepNames != null) ? new FluentSteps(stepNames, stepValues) : FluentSteps.EMPTY;
+        this.buildPlan = FluentBuildPlan.compile(builderClass, methodPrefix, buildMethod, fluentStyle, invocationEngine,
+                ValueStreamDefinition.resolveAll(steps, resourceLoader, beanFactory), beanFactory);
+    }
+
+    /**
+     * The compiled plan for the template's properties, which is extended by each factory.
+     */
+    public FluentBuildPlan getBuildPlan() {
+        return this.buildPlan;
+    }
+
+    public Class<?> getBuilderClass() {
+        return this.builderClass;
+    }
+
+    public String getBuildMethod() {
+        return this.buildMethod;
+    }
+}
@@ -0,0 +1,22 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.ParserContext;
+import org.w3c.dom.Element;
+
+/**
+ * This class parses any {@code sg:builder-template} XML elements in Spring configuration.
+ */
+public class BuilderTemplateBeanDefinitionParser extends BuilderFactoryBeanDefinitionParser {
+
+    @Override
+    protected Class<?> getBeanClass(Element element) {
+        return BuilderTemplate.class;
+    }
+
+    @Override
+    protected void doParse(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        configureBuilder(element, builder);
+        resolveBuilder(element, parserContext, builder, configureSteps(element, parserContext, builder));
+    }
+}
@@ -0,0 +1,224 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+import org.springframework.beans.FluentBuildPlan;
+import org.springframework.beans.FluentSteps;
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.beans.TypeConverter;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.AbstractFactoryBean;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.core.MethodParameter;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Base class of the factories generated ahead of time by {@link BuilderFactoryGenerator}. A generated factory
+ * invokes the builder's constructor, fluent methods and build method directly, rather than reflectively, so that
+ * neither the builder class nor its methods are introspected at runtime.</p>
+ *
+ * <p>A generated factory is specific to the shape of a {@code sg:builder-factory} definition (its builder, method
+ * prefix, fluent style, build method and the names and kinds of its {@code with} values), but not to the values
+ * themselves. These are passed to the factory as {@link #setBuilderValues(Object[]) builder values}, in the order of
+ * the definition, so that placeholders are resolved as usual. Literal values are converted once when the factory is
+ * initialised, unless their converted form is mutable; bean references are resolved for each object built.</p>
+ *
+ * <p>Generated factories are only used if they are listed in an {@link #INDEX_LOCATION index} on the classpath, which
+ * the generator writes alongside them. Without an index, definitions are not even matched against generated
+ * factories.</p>
+ */
+public abstract class GeneratedBuilderFactoryBean extends AbstractFactoryBean {
+
+    /**
+     * The package of all generated factories.
+     */
+    static final String GENERATED_PACKAGE = "org.stuartgunter.spring.beans.factory.xml.generated";
+
+    // changed whenever the generated code changes incompatibly, so that stale classes are no longer picked up
+    private static final String GENERATOR_VERSION = "2";
+
+    /**
+     * The location of the index of generated factories, which lists the class name of one factory per line. All
+     * indexes at this location on the classpath are read.
+     */
+    static final String INDEX_LOCATION = "META-INF/sg-builder-factories.index";
+
+    // the generated factories listed by the indexes visible to each class loader
+    private static final ConcurrentMap<ClassLoader, Set<String>> indexCache =
+            CacheBuilder.newBuilder().weakKeys().<ClassLoader, Set<String>>build().asMap();
+
+    private Object[] builderValues;
+
+    private MethodParameter[] methodParameters;
+    private Object[] sharedValues;
+    private String[] referenceNames;
+    private boolean[] convertEachTime;
+
+    /**
+     * Returns the name of the factory generated for a builder-factory definition of the given shape.
+     */
+    static String generatedClassName(String builderClassName, String methodPrefix, String fluentStyle,
+                                     String buildMethod, FluentSteps steps) {
+        StringBuilder shape = new StringBuilder(GENERATOR_VERSION)
+                .append('|').append(builderClassName)
+                .append('|').append(methodPrefix)
+                .append('|').append(fluentStyle)
+                .append('|').append(buildMethod);
+        for (int i = 0; i < steps.size(); i++) {
+            shape.append('|').append(steps.getName(i))
+                    .append((steps.getValue(i) instanceof RuntimeBeanReference) ? "=ref" : "=value");
+        }
+        String fingerprint = Hashing.sha1().hashString(shape, Charsets.UTF_8).toString().substring(0, 16);
+        return GENERATED_PACKAGE + ".BuilderFactory_" + fingerprint;
+    }
+
+    /**
+     * Returns the class names of the generated factories listed by the indexes visible to the given class loader,
+     * which are read once per class loader.
+     */
+    static Set<String> indexedClassNames(ClassLoader classLoader) {
+        Set<String> classNames = indexCache.get(classLoader);
+        if (classNames == null) {
+            classNames = readIndexes(classLoader);
+            indexCache.putIfAbsent(classLoader, classNames);
+        }
+        return classNames;
+    }
+
+    private static Set<String> readIndexes(ClassLoader classLoader) {
+        ImmutableSet.Builder<String> classNames = ImmutableSet.builder();
+        try {
+            Enumeration<URL> indexes = classLoader.getResources(INDEX_LOCATION);
+            while (indexes.hasMoreElements()) {
+                for (String line : Resources.readLines(indexes.nextElement(), Charsets.UTF_8)) {
+                    if (StringUtils.hasText(line)) {
+                        classNames.add(line.trim());
+                    }
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new IllegalArgumentException(
+                    "Unable to read the index of generated builder-factories from [" + INDEX_LOCATION + "]", ex);
+        }
+        return classNames.build();
+    }
+
+    /**
+     * Whether a factory can be generated for the given steps, i.e. whether all of their values are literals or bean
+     * references.
+     */
+    static boolean supports(FluentSteps steps) {
+        for (int i = 0; i < steps.size(); i++) {
+            Object value = steps.getValue(i);
+            if (!(value instanceof String) && !(value instanceof RuntimeBeanReference)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The values to pass to the builder's fluent methods, in order. Each value is either a literal or a
+     * {@link RuntimeBeanReference}.
+     */
+    public void setBuilderValues(Object[] builderValues) {
+        this.builderValues = builderValues;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Class<?>[] parameterTypes = getParameterTypes();
+        Assert.isTrue(builderValues != null && builderValues.length == parameterTypes.length,
+                "Expected " + parameterTypes.length + " builder values for " + getClass().getName());
+
+        // the fluent methods are only looked up for their generic parameter types, which conversion takes into account
+        String[] methodNames = getMethodNames();
+        this.methodParameters = new MethodParameter[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            this.methodParameters[i] =
+                    new MethodParameter(ClassUtils.getMethod(getBuilderClass(), methodNames[i], parameterTypes[i]), 0);
+        }
+
+        this.sharedValues = new Object[parameterTypes.length];
+        this.referenceNames = new String[parameterTypes.length];
+        this.convertEachTime = new boolean[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Object value = builderValues[i];
+            if (value instanceof RuntimeBeanReference) {
+                this.referenceNames[i] = ((RuntimeBeanReference) value).getBeanName();
+            } else {
+                Object convertedValue = convert(value, this.methodParameters[i]);
+                this.sharedValues[i] = (convertedValue == value || FluentBuildPlan.isImmutable(convertedValue))
+                        ? convertedValue
+                        : value;
+                this.convertEachTime[i] = (this.sharedValues[i] != convertedValue);
+            }
+        }
+        super.afterPropertiesSet();
+    }
+
+    @Override
+    protected Object createInstance() throws Exception {
+        Object[] values = new Object[this.methodParameters.length];
+        for (int i = 0; i < values.length; i++) {
+            if (this.referenceNames[i] != null) {
+                values[i] = convert(getBeanFactory().getBean(this.referenceNames[i]), this.methodParameters[i]);
+            } else if (this.convertEachTime[i]) {
+                values[i] = convert(this.sharedValues[i], this.methodParameters[i]);
+            } else {
+                values[i] = this.sharedValues[i];
+            }
+        }
+        return build(values);
+    }
+
+    /**
+     * Converts the value to the (generic) type of the given parameter, as a {@link BuilderFactoryBean} would.
+     */
+    private Object convert(Object value, MethodParameter methodParameter) {
+        if (ClassUtils.isAssignableValue(methodParameter.getParameterType(), value)) {
+            return value;
+        }
+        BeanFactory beanFactory = getBeanFactory();
+        TypeConverter typeConverter = (beanFactory instanceof ConfigurableBeanFactory)
+                ? ((ConfigurableBeanFactory) beanFactory).getTypeConverter()
+                : new SimpleTypeConverter();
+        return typeConverter.convertIfNecessary(value, methodParameter.getParameterType(), methodParameter);
+    }
+
+    /**
+     * The builder class.
+     */
+    protected abstract Class<?> getBuilderClass();
+
+    /**
+     * The names of the fluent methods invoked by {@link #build(Object[])}, in order.
+     */
+    protected abstract String[] getMethodNames();
+
+    /**
+     * The parameter types of the fluent methods invoked by {@link #build(Object[])}, in order.
+     */
+    protected abstract Class<?>[] getParameterTypes();
+
+    /**
+     * Constructs the object.
+     *
+     * @param values the values to pass to the fluent methods, each converted to the corresponding
+     * {@link #getParameterTypes() parameter type}
+     */
+    protected abstract Object build(Object[] values) throws Exception;
+}
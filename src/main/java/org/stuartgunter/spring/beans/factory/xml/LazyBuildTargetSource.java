@@ -0,0 +1,66 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.springframework.aop.TargetSource;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.FluentRecipe;
+import org.springframework.beans.factory.BeanCreationException;
+
+/**
+ * <p>{@link TargetSource} that builds its target from a {@link FluentRecipe} on first access.</p>
+ *
+ * <p>The target is held in a volatile field, so once it has been built, obtaining it does not involve any locking.
+ * Concurrent first accesses are serialised, so that the target is only built once. If the build fails, the failure
+ * is reported to the caller and the build is attempted again on the next access.</p>
+ */
+class LazyBuildTargetSource implements TargetSource {
+
+    private final String beanName;
+    private final Class<?> targetClass;
+    private final FluentRecipe recipe;
+
+    private volatile Object target;
+
+    LazyBuildTargetSource(String beanName, Class<?> targetClass, FluentRecipe recipe) {
+        this.beanName = beanName;
+        this.targetClass = targetClass;
+        this.recipe = recipe;
+    }
+
+    @Override
+    public Class<?> getTargetClass() {
+        return this.targetClass;
+    }
+
+    @Override
+    public boolean isStatic() {
+        return false;
+    }
+
+    @Override
+    public Object getTarget() {
+        Object target = this.target;
+        if (target == null) {
+            synchronized (this) {
+                target = this.target;
+                if (target == null) {
+                    target = build();
+                    this.target = target;
+                }
+            }
+        }
+        return target;
+    }
+
+    @Override
+    public void releaseTarget(Object target) {
+    }
+
+    private Object build() {
+        try {
+            return this.recipe.create();
+        }
+        catch (BeansException ex) {
+            throw new BeanCreationException(this.beanName, "Lazy build failed", ex);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.FluentSteps;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanCurrentlyInCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <p>Pre-builds the objects of all eager singleton {@code sg:builder-factory} beans in parallel, before the container
+ * creates the factories themselves. This is intended for contexts with many builder-factory beans whose build methods
+ * are slow.</p>
+ *
+ * <p>When the first builder-factory bean is initialised, this processor builds a dependency graph of all eligible
+ * builder-factory definitions from the bean references among their {@code with} values. Definitions without
+ * outstanding dependencies are built concurrently on the configured {@link Executor}; each dependent is built as soon
+ * as all of its dependencies are available. References to any other beans are resolved up front, on the calling
+ * thread, as the container does not support concurrent bean creation. Each pre-built object is then handed to its
+ * factory when the container initialises it.</p>
+ *
+ * <p>Dependents are given the objects that the container exposes for their dependencies, rather than the objects
+ * built, so that post-processing (e.g. auto-proxying) applies as it would with sequential creation. The calling thread
+ * therefore creates each dependency bean, with its pre-built object, as soon as it has been built. Definitions that
+ * refer to the bean that triggered the pre-build, directly or indirectly, are left to the container, as that bean
+ * cannot be exposed until it has been initialised.</p>
+ *
+ * <p>Circular references are reported with a {@link BeanCurrentlyInCreationException}, and a failure to build any
+ * object fails the initialisation of the bean that triggered the pre-build, as would have been the case with
+ * sequential creation. A build that the executor rejects counts as a failure of that build.</p>
+ *
+ * <p>Definitions that are lazy (or build lazily), abstract, declare {@code depends-on}, are not singletons, extend an
+ * {@code sg:builder-template}, contain nested builder-factories, are refreshable, are replicated or are built
+ * asynchronously are left to the container. The steps of a template or nested builder-factory may reference other
+ * beans, which would then be created on the worker threads, beans that refer to a refreshable bean must be given its
+ * proxy rather than the object built, and replicas and asynchronous builds already run in parallel.</p>
+ */
+public class ParallelBuilderFactoryInitializer implements BeanPostProcessor, BeanFactoryAware {
+
+    private static final String STEP_VALUES = "stepValues";
+
+    private ConfigurableListableBeanFactory beanFactory;
+    private Executor executor;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private boolean prebuilt;
+    private final Map<String, Node> prebuiltNodes = Maps.newConcurrentMap();
+
+    /**
+     * The executor on which the objects are built, e.g. a {@link java.util.concurrent.ForkJoinPool}. If not set, a
+     * fixed thread pool of {@link #setParallelism(int) parallelism} threads is created for the duration of the
+     * pre-build.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * The number of threads used when no {@link #setExecutor(Executor) executor} is set.
+     * Defaults to the number of available processors.
+     */
+    public void setParallelism(int parallelism) {
+        Assert.isTrue(parallelism > 0, "Parallelism must be greater than 0");
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        Assert.isInstanceOf(ConfigurableListableBeanFactory.class, beanFactory,
+                "Parallel initialisation requires a ConfigurableListableBeanFactory");
+        this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (bean instanceof BuilderFactoryBean) {
+            prebuildIfNecessary(beanName);
+            Node node = this.prebuiltNodes.remove(beanName);
+            if (node != null) {
+                ((BuilderFactoryBean) bean).setPrebuiltInstance(node.instance, node.factory.getDetachedStatistics());
+            }
+        }
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    private synchronized void prebuildIfNecessary(String triggerName) {
+        if (!this.prebuilt) {
+            this.prebuilt = true;
+            prebuild(triggerName);
+        }
+    }
+
+    private void prebuild(String triggerName) {
+        Map<String, Node> nodes = findEligibleDefinitions();
+        if (nodes.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> canonicalNames = Maps.newHashMap();
+        for (String beanName : nodes.keySet()) {
+            canonicalNames.put(beanName, beanName);
+            for (String alias : this.beanFactory.getAliases(beanName)) {
+                canonicalNames.put(alias, beanName);
+            }
+        }
+
+        // references to other beans are resolved here, as the container cannot create beans concurrently
+        for (Node node : nodes.values()) {
+            for (RuntimeBeanReference reference : node.references) {
+                if (!canonicalNames.containsKey(reference.getBeanName())) {
+                    node.resolvedReferences.put(reference, this.beanFactory.getBean(reference.getBeanName()));
+                }
+            }
+        }
+
+        // resolving those references may have caused some of the builder-factory beans to be created already
+        for (Node node : Lists.newArrayList(nodes.values())) {
+            if (this.beanFactory.containsSingleton(node.beanName)) {
+                nodes.remove(node.beanName);
+            }
+        }
+        for (Node node : nodes.values()) {
+            for (RuntimeBeanReference reference : node.references) {
+                String dependency = canonicalNames.get(reference.getBeanName());
+                if (dependency == null) {
+                    continue;
+                }
+                Node dependencyNode = nodes.get(dependency);
+                if (dependencyNode == null) {
+                    node.resolvedReferences.put(reference, this.beanFactory.getBean(reference.getBeanName()));
+                } else {
+                    node.dependencies.put(reference, dependencyNode);
+                    dependencyNode.dependents.add(node);
+                }
+            }
+        }
+
+        detectCycles(nodes);
+        Node trigger = nodes.get(triggerName);
+        if (trigger != null) {
+            removeDependents(trigger, nodes);
+        }
+        execute(nodes);
+    }
+
+    /**
+     * Removes all nodes that depend on the given node, directly or indirectly.
+     */
+    private void removeDependents(Node node, Map<String, Node> nodes) {
+        for (Node dependent : Lists.newArrayList(node.dependents)) {
+            if (nodes.remove(dependent.beanName) != null) {
+                for (Node dependency : dependent.dependencies.values()) {
+                    dependency.dependents.remove(dependent);
+                }
+                removeDependents(dependent, nodes);
+            }
+        }
+    }
+
+    private Map<String, Node> findEligibleDefinitions() {
+        Map<String, Node> nodes = Maps.newLinkedHashMap();
+        int order = 0;
+        for (String beanName : this.beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = this.beanFactory.getMergedBeanDefinition(beanName);
+            if (!BuilderFactoryBean.class.getName().equals(definition.getBeanClassName())
+                    || !definition.isSingleton() || definition.isAbstract() || definition.isLazyInit()
+                    || (definition.getDependsOn() != null && definition.getDependsOn().length > 0)
+                    || this.beanFactory.containsSingleton(beanName)) {
+                continue;
+            }
+            if (!isPropertyEnabled(definition, "singleton", true) || isPropertyEnabled(definition, "lazyBuild", false)
+                    || definition.getPropertyValues().contains("template") || hasNestedBuilderFactories(definition)
+                    || isPropertyEnabled(definition, "refreshable", false)
+                    || definition.getPropertyValues().contains("replicas")
+                    || isPropertyEnabled(definition, "async", false)) {
+                continue;
+            }
+            nodes.put(beanName, new Node(beanName, order++, definition));
+        }
+        return nodes;
+    }
+
+    private static boolean hasNestedBuilderFactories(BeanDefinition definition) {
+        return BuilderFactoryBean.containsNestedDefinitions(BuilderFactoryBean.getSteps(definition));
+    }
+
+    private static boolean isPropertyEnabled(BeanDefinition definition, String propertyName, boolean defaultValue) {
+        PropertyValue propertyValue = definition.getPropertyValues().getPropertyValue(propertyName);
+        return (propertyValue != null) ? Boolean.parseBoolean(String.valueOf(propertyValue.getValue())) : defaultValue;
+    }
+
+    private void detectCycles(Map<String, Node> nodes) {
+        Set<Node> visited = Sets.newHashSet();
+        Set<Node> inProgress = Sets.newHashSet();
+        for (Node node : nodes.values()) {
+            detectCycles(node, visited, inProgress);
+        }
+    }
+
+    private void detectCycles(Node node, Set<Node> visited, Set<Node> inProgress) {
+        if (visited.contains(node)) {
+            return;
+        }
+        if (!inProgress.add(node)) {
+            throw new BeanCurrentlyInCreationException(node.beanName);
+        }
+        for (Node dependency : node.dependencies.values()) {
+            detectCycles(dependency, visited, inProgress);
+        }
+        inProgress.remove(node);
+        visited.add(node);
+    }
+
+    private void execute(Map<String, Node> nodes) {
+        ExecutorService ownExecutor = null;
+        Executor executor = this.executor;
+        if (executor == null) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("builder-factory-prebuild-");
+            threadFactory.setDaemon(true);
+            ownExecutor = Executors.newFixedThreadPool(Math.min(this.parallelism, nodes.size()), threadFactory);
+            executor = ownExecutor;
+        }
+
+        BlockingQueue<Node> completions = new LinkedBlockingQueue<Node>();
+        try {
+            for (Node node : nodes.values()) {
+                prepare(node);
+            }
+            for (Node node : nodes.values()) {
+                if (node.dependencies.isEmpty()) {
+                    submit(node, executor, completions);
+                }
+            }
+            for (int remaining = nodes.size(); remaining > 0; remaining--) {
+                complete(completions.take(), executor, completions);
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BeanCreationException("Interrupted while pre-building builder-factory beans", ex);
+        }
+        finally {
+            if (ownExecutor != null) {
+                ownExecutor.shutdownNow();
+            }
+        }
+
+        // report the failure that sequential creation would have encountered first
+        Node failed = null;
+        for (Node node : nodes.values()) {
+            if (node.failure != null && (failed == null || node.order < failed.order)) {
+                failed = node;
+            }
+        }
+        if (failed != null) {
+            if (failed.failure instanceof BeanCreationException) {
+                throw (BeanCreationException) failed.failure;
+            }
+            throw new BeanCreationException(failed.beanName, "Failed to pre-build bean", failed.failure);
+        }
+
+        for (Node node : nodes.values()) {
+            if (node.exposedObject == null) {
+                this.prebuiltNodes.put(node.beanName, node);
+            }
+        }
+    }
+
+    /**
+     * Configures a detached factory from the definition. This is done on the calling thread, so that class names are
+     * resolved against the bean factory's class loader.
+     */
+    private void prepare(Node node) {
+        BuilderFactoryBean factory = new BuilderFactoryBean();
+        BeanWrapper beanWrapper = new BeanWrapperImpl(factory);
+        for (PropertyValue propertyValue : node.definition.getPropertyValues().getPropertyValues()) {
+            Object value = propertyValue.getValue();
+            if ("builderClass".equals(propertyValue.getName()) && value instanceof String) {
+                value = ClassUtils.resolveClassName((String) value, this.beanFactory.getBeanClassLoader());
+            }
+            if (!STEP_VALUES.equals(propertyValue.getName())) {
+                beanWrapper.setPropertyValue(propertyValue.getName(), value);
+            }
+        }
+        factory.setBeanFactory(this.beanFactory);
+        node.factory = factory;
+        node.remainingDependencies = Sets.newHashSet(node.dependencies.values()).size();
+    }
+
+    private void submit(final Node node, final Executor executor, final BlockingQueue<Node> completions) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        node.instance = node.factory.buildDetached(node.resolveSteps());
+                    }
+                    catch (Throwable ex) {
+                        node.failure = ex;
+                    }
+                    finally {
+                        completions.add(node);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException ex) {
+            // the node will never run, so complete it as failed rather than leaving the pre-build waiting for it
+            node.failure = ex;
+            completions.add(node);
+        }
+    }
+
+    /**
+     * Exposes a finished node to its dependents, on the calling thread, and submits those that are now ready.
+     */
+    private void complete(Node node, Executor executor, BlockingQueue<Node> completions) {
+        if (node.failure == null && !node.skipped && !node.dependents.isEmpty()) {
+            // the container creates the bean with the pre-built object, and exposes it as it would otherwise have done
+            this.prebuiltNodes.put(node.beanName, node);
+            try {
+                node.exposedObject = this.beanFactory.getBean(node.beanName);
+            }
+            catch (Throwable ex) {
+                node.failure = ex;
+            }
+            finally {
+                this.prebuiltNodes.remove(node.beanName);
+            }
+        }
+        for (Node dependent : node.dependents) {
+            if (node.failure != null || node.skipped) {
+                dependent.skipped = true;
+            }
+            if (--dependent.remainingDependencies == 0) {
+                if (dependent.skipped) {
+                    // a dependency failed, so this will never be built
+                    completions.add(dependent);
+                } else {
+                    submit(dependent, executor, completions);
+                }
+            }
+        }
+    }
+
+    /**
+     * A builder-factory definition in the dependency graph.
+     */
+    private static final class Node {
+
+        final String beanName;
+        final int order;
+        final BeanDefinition definition;
+        final FluentSteps steps;
+        final List<RuntimeBeanReference> references = Lists.newArrayList();
+
+        final Map<RuntimeBeanReference, Object> resolvedReferences = new IdentityHashMap<RuntimeBeanReference, Object>();
+        final Map<RuntimeBeanReference, Node> dependencies = new IdentityHashMap<RuntimeBeanReference, Node>();
+        final Set<Node> dependents = Sets.newLinkedHashSet();
+
+        // only accessed on the calling thread
+        BuilderFactoryBean factory;
+        int remainingDependencies;
+        boolean skipped;
+        Object exposedObject;
+
+        volatile Object instance;
+        volatile Throwable failure;
+
+        Node(String beanName, int order, BeanDefinition definition) {
+            this.beanName = beanName;
+            this.order = order;
+            this.definition = definition;
+
+            this.steps = BuilderFactoryBean.getSteps(definition);
+            for (int i = 0; i < this.steps.size(); i++) {
+                if (this.steps.getValue(i) instanceof RuntimeBeanReference) {
+                    this.references.add((RuntimeBeanReference) this.steps.getValue(i));
+                }
+            }
+        }
+
+        /**
+         * Returns a copy of the steps in which every bean reference is replaced by its resolved value, or by the
+         * object the container exposes for a pre-built dependency.
+         */
+        FluentSteps resolveSteps() {
+            Object[] values = new Object[this.steps.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object value = this.steps.getValue(i);
+                if (value instanceof RuntimeBeanReference) {
+                    Node dependency = this.dependencies.get(value);
+                    values[i] = (dependency != null) ? dependency.exposedObject : this.resolvedReferences.get(value);
+                } else {
+                    values[i] = value;
+                }
+            }
+            return this.steps.withValues(values);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
+import org.springframework.beans.factory.xml.ParserContext;
+import org.springframework.util.StringUtils;
+import org.w3c.dom.Element;
+
+/**
+ * This class parses any {@code sg:parallel-initialization} XML elements in Spring configuration.
+ */
+public class ParallelInitializationBeanDefinitionParser extends AbstractSingleBeanDefinitionParser {
+
+    @Override
+    protected Class<?> getBeanClass(Element element) {
+        return ParallelBuilderFactoryInitializer.class;
+    }
+
+    @Override
+    protected boolean shouldGenerateIdAsFallback() {
+        return true;
+    }
+
+    @Override
+    protected void doParse(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
+        String executor = element.getAttribute("executor");
+        if (StringUtils.hasText(executor)) {
+            builder.addPropertyReference("executor", executor);
+        }
+
+        String parallelism = element.getAttribute("parallelism");
+        if (StringUtils.hasText(parallelism)) {
+            builder.addPropertyValue("parallelism", parallelism);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.PropertyPlaceholderConfigurer;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.PropertyPlaceholderHelper;
+import org.springframework.util.StringValueResolver;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * <p>{@link PropertyPlaceholderConfigurer} that can be {@link #refresh() refreshed} at runtime, rebuilding only the
+ * refreshable {@code sg:builder-factory} beans that are affected by the properties that changed, instead of refreshing
+ * the whole context.</p>
+ *
+ * <p>Each refreshable factory keeps its steps as they were declared, and this configurer records the keys
+ * of the placeholders that the values of each factory resolved to. On refresh, the factories that depend on any key
+ * whose value changed are rebuilt, followed by the refreshable factories that reference them (directly or indirectly),
+ * in dependency order. Each new object replaces the previous one behind the proxy that the factory exposed, so the
+ * references held by other beans remain valid. All other beans, including those that reference a refreshable bean, are
+ * left untouched.</p>
+ *
+ * <p>Only the placeholders of the builder-factories' own {@code with} values are refreshed. Placeholders of templates,
+ * streamed resources and any other beans are resolved once, when the context is refreshed.</p>
+ */
+public class RefreshablePlaceholderConfigurer extends PropertyPlaceholderConfigurer {
+
+    private int systemPropertiesMode = SYSTEM_PROPERTIES_MODE_FALLBACK;
+
+    private ConfigurableListableBeanFactory beanFactory;
+    private Properties properties;
+
+    // the placeholder keys that each refreshable factory's properties resolved to, by bean name
+    private final Map<String, Set<String>> placeholderKeys = Maps.newHashMap();
+
+    @Override
+    public void setSystemPropertiesMode(int systemPropertiesMode) {
+        super.setSystemPropertiesMode(systemPropertiesMode);
+        this.systemPropertiesMode = systemPropertiesMode;
+    }
+
+    @Override
+    protected void processProperties(ConfigurableListableBeanFactory beanFactory, Properties properties) {
+        this.beanFactory = beanFactory;
+        this.properties = properties;
+        super.processProperties(beanFactory, properties);
+    }
+
+    /**
+     * Reloads the properties from the configured locations, and rebuilds the affected beans.
+     *
+     * @return the names of the beans that were rebuilt
+     * @see #refresh(Properties)
+     */
+    public Set<String> refresh() throws IOException {
+        Properties properties = mergeProperties();
+        convertProperties(properties);
+        return refresh(properties);
+    }
+
+    /**
+     * Replaces the properties with the given ones, and rebuilds the affected beans. If any bean fails to be rebuilt,
+     * the beans rebuilt before it keep their new objects, and the remaining beans are rebuilt again by the next refresh.
+     *
+     * @return the names of the beans that were rebuilt
+     * @throws BeanCreationException if a bean could not be rebuilt
+     */
+    public synchronized Set<String> refresh(Properties properties) {
+        Assert.state(this.properties != null, "Placeholders have not been processed yet");
+        Set<String> changedKeys = findChangedKeys(this.properties, properties);
+        Map<String, BuilderFactoryBean> factories = findRefreshableFactories();
+
+        Set<String> affected = Sets.newLinkedHashSet();
+        for (Map.Entry<String, BuilderFactoryBean> factory : factories.entrySet()) {
+            if (!Collections.disjoint(getPlaceholderKeys(factory.getKey(), factory.getValue()), changedKeys)) {
+                affected.add(factory.getKey());
+            }
+        }
+        boolean added = !affected.isEmpty();
+        while (added) {
+            added = false;
+            for (Map.Entry<String, BuilderFactoryBean> factory : factories.entrySet()) {
+                if (!affected.contains(factory.getKey())
+                        && !Collections.disjoint(getReferencedBeanNames(factory.getValue()), affected)) {
+                    affected.add(factory.getKey());
+                    added = true;
+                }
+            }
+        }
+
+        Set<String> rebuilt = Sets.newLinkedHashSet();
+        while (rebuilt.size() < affected.size()) {
+            boolean progress = false;
+            for (String beanName : affected) {
+                Set<String> dependencies = getReferencedBeanNames(factories.get(beanName));
+                dependencies.retainAll(affected);
+                dependencies.removeAll(rebuilt);
+                if (!rebuilt.contains(beanName) && dependencies.isEmpty()) {
+                    rebuild(beanName, factories.get(beanName), properties);
+                    rebuilt.add(beanName);
+                    progress = true;
+                }
+            }
+            Assert.state(progress, "Circular references among refreshable beans " + affected);
+        }
+        this.properties = properties;
+        return rebuilt;
+    }
+
+    private void rebuild(String beanName, BuilderFactoryBean factory, Properties properties) {
+        Set<String> keys = Sets.newHashSet();
+        try {
+            factory.refresh(factory.resolveDeclaredSteps(createValueResolver(properties, keys)));
+        }
+        catch (Exception ex) {
+            throw new BeanCreationException(beanName, "Refresh failed", ex);
+        }
+        this.placeholderKeys.put(beanName, keys);
+    }
+
+    private Map<String, BuilderFactoryBean> findRefreshableFactories() {
+        Map<String, BuilderFactoryBean> factories = Maps.newLinkedHashMap();
+        for (Map.Entry<String, BuilderFactoryBean> factory
+                : this.beanFactory.getBeansOfType(BuilderFactoryBean.class, false, false).entrySet()) {
+            if (factory.getValue().isRefreshable()) {
+                factories.put(BeanFactoryUtils.transformedBeanName(factory.getKey()), factory.getValue());
+            }
+        }
+        return factories;
+    }
+
+    /**
+     * The keys of the placeholders that the factory's steps depend on, which are recorded by resolving them
+     * against the current properties the first time they are needed.
+     */
+    private Set<String> getPlaceholderKeys(String beanName, BuilderFactoryBean factory) {
+        Set<String> keys = this.placeholderKeys.get(beanName);
+        if (keys == null) {
+            keys = Sets.newHashSet();
+            factory.resolveDeclaredSteps(createValueResolver(this.properties, keys));
+            this.placeholderKeys.put(beanName, keys);
+        }
+        return keys;
+    }
+
+    private static Set<String> getReferencedBeanNames(BuilderFactoryBean factory) {
+        Set<String> beanNames = Sets.newHashSet();
+        factory.collectReferencedBeanNames(beanNames);
+        return beanNames;
+    }
+
+    private static Set<String> findChangedKeys(Properties previous, Properties current) {
+        Set<String> changedKeys = Sets.newHashSet();
+        for (String key : Sets.union(previous.stringPropertyNames(), current.stringPropertyNames())) {
+            if (!ObjectUtils.nullSafeEquals(previous.getProperty(key), current.getProperty(key))) {
+                changedKeys.add(key);
+            }
+        }
+        return changedKeys;
+    }
+
+    /**
+     * Creates a resolver that resolves placeholders like this configurer, against the given properties, and records
+     * the key of each placeholder it encounters.
+     */
+    private StringValueResolver createValueResolver(final Properties properties, final Set<String> keys) {
+        final PropertyPlaceholderHelper helper = new PropertyPlaceholderHelper(
+                placeholderPrefix, placeholderSuffix, valueSeparator, ignoreUnresolvablePlaceholders);
+        final PropertyPlaceholderHelper.PlaceholderResolver placeholderResolver =
+                new PropertyPlaceholderHelper.PlaceholderResolver() {
+                    @Override
+                    public String resolvePlaceholder(String placeholderName) {
+                        keys.add(placeholderName);
+                        return RefreshablePlaceholderConfigurer.this.resolvePlaceholder(
+                                placeholderName, properties, systemPropertiesMode);
+                    }
+                };
+        return new StringValueResolver() {
+            @Override
+            public String resolveStringValue(String value) {
+                String resolved = helper.replacePlaceholders(value, placeholderResolver);
+                return resolved.equals(nullValue) ? null : resolved;
+            }
+        };
+    }
+}
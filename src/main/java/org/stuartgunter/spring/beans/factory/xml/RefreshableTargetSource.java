@@ -0,0 +1,48 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.springframework.aop.TargetSource;
+
+/**
+ * <p>{@link TargetSource} whose target can be replaced at any time, behind the stable proxy of a refreshable
+ * {@code sg:builder-factory} bean.</p>
+ *
+ * <p>The target is held in a volatile field, so obtaining it does not involve any locking, and each invocation on the
+ * proxy sees either the previous or the new target in its entirety.</p>
+ */
+class RefreshableTargetSource implements TargetSource {
+
+    private final Class<?> targetClass;
+
+    private volatile Object target;
+
+    RefreshableTargetSource(Class<?> targetClass, Object target) {
+        this.targetClass = targetClass;
+        this.target = target;
+    }
+
+    @Override
+    public Class<?> getTargetClass() {
+        return this.targetClass;
+    }
+
+    @Override
+    public boolean isStatic() {
+        return false;
+    }
+
+    @Override
+    public Object getTarget() {
+        return this.target;
+    }
+
+    @Override
+    public void releaseTarget(Object target) {
+    }
+
+    /**
+     * Replaces the target for all subsequent invocations.
+     */
+    void swap(Object target) {
+        this.target = target;
+    }
+}
@@ -6,8 +6,27 @@ import org.springframework.beans.factory.xml.NamespaceHandlerSupport;
  * Registers the {@link org.springframework.beans.factory.xml.BeanDefinitionParser}s for the <code>sg</code> namespace
  */
 public class SpringNamespaceHandler extends NamespaceHandlerSupport {
+
+    static final String NAMESPACE_URI = "http://www.stuartgunter.org/schema/spring";
+
+    private final boolean useGeneratedFactories;
+
+    public SpringNamespaceHandler() {
+        this(true);
+    }
+
+    /**
+     * @param useGeneratedFactories whether to use the {@link GeneratedBuilderFactoryBean generated factories} on the
+     * classpath, where available
+     */
+    SpringNamespaceHandler(boolean useGeneratedFactories) {
+        this.useGeneratedFactories = useGeneratedFactories;
+    }
+
     @Override
     public void init() {
-        registerBeanDefinitionParser("builder-factory", new BuilderFactoryBeanDefinitionParser());
+        registerBeanDefinitionParser("builder-factory", new BuilderFactoryBeanDefinitionParser(useGeneratedFactories));
+        registerBeanDefinitionParser("builder-template", new BuilderTemplateBeanDefinitionParser());
+        registerBeanDefinitionParser("parallel-initialization", new ParallelInitializationBeanDefinitionParser());
     }
 }
@@ -0,0 +1,51 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.springframework.beans.FluentSteps;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.util.StringValueResolver;
+
+import java.util.Set;
+
+/**
+ * <p>Internal class that holds the steps of a refreshable {@code sg:builder-factory} as they were declared, i.e.
+ * before any placeholders were resolved.</p>
+ *
+ * <p>Placeholder configurers resolve the strings in arrays, maps and lists of bean definitions in place, but do not
+ * visit any other type of value. Wrapping the declared steps keeps them intact, so that they can be resolved again
+ * whenever the properties change.</p>
+ */
+final class UnresolvedSteps {
+
+    private final FluentSteps steps;
+
+    /**
+     * @param steps the declared steps, whose values must not be shared with the bean definition
+     */
+    UnresolvedSteps(FluentSteps steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * Resolves all literal values with the given resolver. All other values are left as they are.
+     */
+    FluentSteps resolve(StringValueResolver resolver) {
+        Object[] values = new Object[this.steps.size()];
+        for (int i = 0; i < values.length; i++) {
+            Object value = this.steps.getValue(i);
+            values[i] = (value instanceof String) ? resolver.resolveStringValue((String) value) : value;
+        }
+        return this.steps.withValues(values);
+    }
+
+    /**
+     * Adds the names of the beans referenced by the steps to the given set.
+     */
+    void collectReferencedBeanNames(Set<String> beanNames) {
+        for (int i = 0; i < this.steps.size(); i++) {
+            Object value = this.steps.getValue(i);
+            if (value instanceof RuntimeBeanReference) {
+                beanNames.add(((RuntimeBeanReference) value).getBeanName());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.springframework.beans.FluentSteps;
+import org.springframework.beans.FluentValueStream;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The definition of an {@code sg:with-stream} element. Only the location of the resource is held in the bean
+ * definition; it is resolved to a {@link FluentValueStream} when the factory is initialised, once placeholders in the
+ * location can be resolved.
+ */
+final class ValueStreamDefinition {
+
+    private final String location;
+    private final String encoding;
+    private final String delimiter;
+
+    ValueStreamDefinition(String location, String encoding, String delimiter) {
+        this.location = location;
+        this.encoding = encoding;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Replaces any stream definitions among the given steps with the streams they define.
+     *
+     * @return the resolved steps, or the given steps if they contain no stream definitions
+     */
+    static FluentSteps resolveAll(FluentSteps steps, ResourceLoader resourceLoader, BeanFactory beanFactory) {
+        if (steps == null || !containsAny(steps)) {
+            return steps;
+        }
+
+        Object[] values = new Object[steps.size()];
+        for (int i = 0; i < values.length; i++) {
+            Object value = steps.getValue(i);
+            values[i] = (value instanceof ValueStreamDefinition)
+                    ? ((ValueStreamDefinition) value).resolve(resourceLoader, beanFactory)
+                    : value;
+        }
+        return steps.withValues(values);
+    }
+
+    private static boolean containsAny(FluentSteps steps) {
+        for (int i = 0; i < steps.size(); i++) {
+            if (steps.getValue(i) instanceof ValueStreamDefinition) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    FluentValueStream resolve(ResourceLoader resourceLoader, BeanFactory beanFactory) {
+        String location = (beanFactory instanceof ConfigurableBeanFactory)
+                ? ((ConfigurableBeanFactory) beanFactory).resolveEmbeddedValue(this.location)
+                : this.location;
+        return new FluentValueStream(resourceLoader.getResource(location), this.encoding, this.delimiter);
+    }
+
+    @Override
+    public String toString() {
+        return "stream of " + this.location;
+    }
+}
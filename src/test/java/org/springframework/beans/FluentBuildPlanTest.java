@@ -0,0 +1,254 @@
+package org.springframework.beans;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.util.StringUtils;
+import org.stuartgunter.spring.beans.factory.xml.TestResettableStringBuilder;
+import org.testng.annotations.Test;
+
+import java.beans.PropertyEditorSupport;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+@Test
+public class FluentBuildPlanTest {
+
+    public void shouldReuseResetBuilders() throws Exception {
+        Map<String, List<Object>> properties = ImmutableMap.<String, List<Object>>of(
+                "append", ImmutableList.<Object>of("a", "b"));
+        FluentBuildPlan plan = FluentBuildPlan.compile(TestResettableStringBuilder.class, "with", "build",
+                FluentStyle.METHODS, InvocationEngine.DEFAULT, FluentSteps.of(properties), null)
+                .withBuilderPool("reset", 1);
+        TestResettableStringBuilder.INSTANCE_COUNT.set(0);
+
+        assertEquals("ab", plan.build());
+        assertEquals("ab", plan.build());
+        assertEquals(1, TestResettableStringBuilder.INSTANCE_COUNT.get());
+        assertFalse(plan.getBuilderPool().isDisabled());
+    }
+
+    public void shouldNotReuseImmutableBuilders() throws Exception {
+        Map<String, List<Object>> properties = ImmutableMap.<String, List<Object>>of(
+                "year", ImmutableList.<Object>of("2012"));
+        FluentBuildPlan plan = FluentBuildPlan.compile(DateTime.class, "with", "toDateTime",
+                FluentStyle.PROPERTIES, InvocationEngine.DEFAULT, FluentSteps.of(properties), null)
+                .withBuilderPool("toDateTime", 1);
+
+        assertEquals(2012, ((DateTime) plan.build()).getYear());
+        assertTrue(plan.getBuilderPool().isDisabled());
+    }
+
+    public void shouldNotReuseBuilderReturnedByBuildMethod() throws Exception {
+        FluentBuildPlan plan = FluentBuildPlan.compile(SelfBuildingBuilder.class, "with", "build",
+                FluentStyle.PROPERTIES, InvocationEngine.DEFAULT, null, null).withBuilderPool("reset", 1);
+
+        Object first = plan.build();
+        Object second = plan.build();
+
+        assertNotSame(first, second);
+        assertTrue(plan.getBuilderPool().isDisabled());
+    }
+
+    @Test(expectedExceptions = FatalBeanException.class)
+    public void shouldRejectUnknownResetMethod() {
+        FluentBuildPlan.compile(TestResettableStringBuilder.class, "with", "build",
+                FluentStyle.METHODS, InvocationEngine.DEFAULT, null, null).withBuilderPool("clear", 1);
+    }
+
+    public void shouldConvertMutableValuesForEveryBuild() throws Exception {
+        Map<String, List<Object>> properties = ImmutableMap.<String, List<Object>>of(
+                "values", ImmutableList.<Object>of("a"));
+        FluentBuildPlan plan = FluentBuildPlan.compile(ArrayBuilder.class, "with", "build",
+                FluentStyle.PROPERTIES, InvocationEngine.DEFAULT, FluentSteps.of(properties), null);
+
+        String[] first = (String[]) plan.build();
+        String[] second = (String[]) plan.build();
+
+        assertEquals(Arrays.asList("a"), Arrays.asList(first));
+        assertTrue(Arrays.equals(first, second));
+        assertNotSame(first, second);
+    }
+
+    public void shouldConvertWithCustomEditorsOfBeanFactory() throws Exception {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerCustomEditor(String[].class, ReversingEditor.class);
+        Map<String, List<Object>> properties = ImmutableMap.<String, List<Object>>of(
+                "values", ImmutableList.<Object>of("a,b"));
+        FluentBuildPlan plan = FluentBuildPlan.compile(ArrayBuilder.class, "with", "build",
+                FluentStyle.PROPERTIES, InvocationEngine.DEFAULT, FluentSteps.of(properties), beanFactory);
+
+        assertTrue(Arrays.equals(new String[] {"b", "a"}, (String[]) plan.build()));
+    }
+
+    public void shouldOnlyBuildInternedObjectsOnce() throws Exception {
+        String value = UUID.randomUUID().toString();
+        Map<String, List<Object>> properties = ImmutableMap.<String, List<Object>>of(
+                "append", ImmutableList.<Object>of(value));
+        FluentBuildPlan plan = FluentBuildPlan.compile(TestResettableStringBuilder.class, "with", "build",
+                FluentStyle.METHODS, InvocationEngine.DEFAULT, FluentSteps.of(properties), null).withInterning();
+        FluentBuildPlan otherPlan = FluentBuildPlan.compile(TestResettableStringBuilder.class, "with", "build",
+                FluentStyle.METHODS, InvocationEngine.REFLECTION, FluentSteps.of(properties), null).withInterning();
+        TestResettableStringBuilder.INSTANCE_COUNT.set(0);
+
+        Object first = plan.build();
+        Object second = otherPlan.build();
+
+        assertEquals(value, first);
+        assertSame(first, second);
+        assertEquals(1, TestResettableStringBuilder.INSTANCE_COUNT.get());
+    }
+
+    @Test(expectedExceptions = FatalBeanException.class)
+    public void shouldRejectInterningOfStreamedValues() {
+        FluentValueStream stream = new FluentValueStream(new ByteArrayResource(new byte[0]), "UTF-8", null);
+        Map<String, List<Object>> properties = ImmutableMap.<String, List<Object>>of(
+                "append", ImmutableList.<Object>of(stream));
+        FluentBuildPlan.compile(TestResettableStringBuilder.class, "with", "build",
+                FluentStyle.METHODS, InvocationEngine.DEFAULT, FluentSteps.of(properties), null).withInterning();
+    }
+
+    public void shouldInternReplicasOnlyOnceResolvedForReplica() throws Exception {
+        Map<String, List<Object>> properties = ImmutableMap.<String, List<Object>>of(
+                "append", ImmutableList.<Object>of(new FluentReplicaValue("replica-{index}")));
+        FluentBuildPlan plan = FluentBuildPlan.compile(TestResettableStringBuilder.class, "with", "build",
+                FluentStyle.METHODS, InvocationEngine.DEFAULT, FluentSteps.of(properties), null).withInterning();
+
+        assertEquals("replica-1", plan.forReplica(1).build());
+        try {
+            plan.build();
+            fail("Expected the replica value to be rejected");
+        }
+        catch (FatalBeanException ex) {
+            assertTrue(ex.getMessage().contains("can only be resolved for a replica"));
+        }
+    }
+
+    public void shouldBuildConcurrentlyWithoutSharingValues() throws Exception {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerCustomEditor(List.class, ReversingListEditor.class);
+        Map<String, List<Object>> properties = ImmutableMap.<String, List<Object>>of(
+                "values", ImmutableList.<Object>of("a,b"));
+        final BuildStatistics statistics = new BuildStatistics();
+        final FluentBuildPlan plan = FluentBuildPlan.compile(ListBuilder.class, "with", "build",
+                FluentStyle.PROPERTIES, InvocationEngine.DEFAULT, FluentSteps.of(properties), beanFactory, statistics);
+        final Set<List<?>> lists = Sets.newSetFromMap(new IdentityHashMap<List<?>, Boolean>());
+        int threadCount = 16;
+        int buildsPerThread = 200;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<List<?>>> results = Lists.newArrayList();
+            for (int i = 0; i < threadCount * buildsPerThread; i++) {
+                results.add(executor.submit(new Callable<List<?>>() {
+                    @Override
+                    public List<?> call() throws Exception {
+                        return (List<?>) plan.build();
+                    }
+                }));
+            }
+            for (Future<List<?>> result : results) {
+                assertEquals(Arrays.asList("b", "a"), result.get());
+                lists.add(result.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threadCount * buildsPerThread, lists.size());
+        assertEquals(threadCount * buildsPerThread, statistics.getBuildCount());
+        assertEquals(threadCount * buildsPerThread, statistics.getFluentInvocationCount());
+    }
+
+    public void shouldCopyConvertedArraysRatherThanConvertAgain() throws Exception {
+        Map<String, List<Object>> properties = ImmutableMap.<String, List<Object>>of(
+                "values", ImmutableList.<Object>of("a"));
+        BuildStatistics statistics = new BuildStatistics();
+        FluentBuildPlan plan = FluentBuildPlan.compile(ArrayBuilder.class, "with", "build",
+                FluentStyle.PROPERTIES, InvocationEngine.DEFAULT, FluentSteps.of(properties), null, statistics);
+
+        plan.build();
+        plan.build();
+
+        assertEquals(1, statistics.getValueConversionCount());
+    }
+
+    public static class ListBuilder {
+
+        private List<?> values;
+
+        public ListBuilder withValues(List<?> values) {
+            this.values = values;
+            return this;
+        }
+
+        public List<?> build() {
+            return this.values;
+        }
+    }
+
+    public static class ReversingListEditor extends PropertyEditorSupport {
+
+        @Override
+        public void setAsText(String text) {
+            List<String> values = Lists.newArrayList(StringUtils.commaDelimitedListToStringArray(text));
+            Collections.reverse(values);
+            setValue(values);
+        }
+    }
+
+    public static class ArrayBuilder {
+
+        private String[] values;
+
+        public ArrayBuilder withValues(String[] values) {
+            this.values = values;
+            return this;
+        }
+
+        public String[] build() {
+            return this.values;
+        }
+    }
+
+    public static class ReversingEditor extends PropertyEditorSupport {
+
+        @Override
+        public void setAsText(String text) {
+            List<String> values = Lists.newArrayList(StringUtils.commaDelimitedListToStringArray(text));
+            Collections.reverse(values);
+            setValue(values.toArray(new String[values.size()]));
+        }
+    }
+
+    public static class SelfBuildingBuilder {
+
+        public void reset() {
+        }
+
+        public SelfBuildingBuilder build() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.springframework.beans;
+
+import org.stuartgunter.spring.beans.factory.xml.TestSpecialStringBuilder;
+import org.stuartgunter.spring.beans.factory.xml.TestStringBuilder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class FluentIntrospectionResultsTest {
+
+    @BeforeMethod
+    public void beforeMethod() {
+        FluentIntrospectionResults.clearCache();
+    }
+
+    public void shouldShareResultsForSameClassPrefixAndStyle() {
+        FluentIntrospectionResults first =
+                FluentIntrospectionResults.forClass(TestStringBuilder.class, "with", FluentStyle.PROPERTIES);
+        FluentIntrospectionResults second =
+                FluentIntrospectionResults.forClass(TestStringBuilder.class, "with", FluentStyle.PROPERTIES);
+
+        assertSame(first, second);
+    }
+
+    public void shouldNotShareResultsForDifferentPrefixes() {
+        FluentIntrospectionResults with =
+                FluentIntrospectionResults.forClass(TestSpecialStringBuilder.class, "with", FluentStyle.PROPERTIES);
+        FluentIntrospectionResults using =
+                FluentIntrospectionResults.forClass(TestSpecialStringBuilder.class, "using", FluentStyle.PROPERTIES);
+
+        assertFalse(with.hasFluentMethod("body"));
+        assertTrue(using.hasFluentMethod("body"));
+    }
+
+    public void shouldIgnorePrefixForFluentMethods() {
+        FluentIntrospectionResults with =
+                FluentIntrospectionResults.forClass(StringBuilder.class, "with", FluentStyle.METHODS);
+        FluentIntrospectionResults using =
+                FluentIntrospectionResults.forClass(StringBuilder.class, "using", FluentStyle.METHODS);
+
+        assertSame(with, using);
+    }
+
+    public void shouldResolveOverloadedMethodsByParameterType() throws Exception {
+        FluentIntrospectionResults results =
+                FluentIntrospectionResults.forClass(TestSpecialStringBuilder.class, "using", FluentStyle.PROPERTIES);
+
+        Method stringMethod = results.getFluentMethod("body", String.class);
+        Method objectMethod = results.getFluentMethod("body", Object.class);
+        Method integerMethod = results.getFluentMethod("body", Integer.class);
+
+        assertEquals(TestSpecialStringBuilder.class.getMethod("usingBody", String.class), stringMethod);
+        assertEquals(TestSpecialStringBuilder.class.getMethod("usingBody", Object.class), objectMethod);
+        assertEquals(objectMethod, integerMethod);
+        assertSame(integerMethod, results.getFluentMethod("body", Integer.class));
+    }
+
+    public void shouldReturnNullForUnknownProperty() {
+        FluentIntrospectionResults results =
+                FluentIntrospectionResults.forClass(TestStringBuilder.class, "with", FluentStyle.PROPERTIES);
+
+        assertNull(results.getFluentMethod("unknown", String.class));
+    }
+}
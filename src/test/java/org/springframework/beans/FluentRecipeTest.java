@@ -0,0 +1,79 @@
+package org.springframework.beans;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.stuartgunter.spring.beans.factory.xml.TestResettableStringBuilder;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+@Test
+public class FluentRecipeTest {
+
+    public void shouldCreateObjectsFromLiteralSteps() {
+        Map<String, List<Object>> steps = ImmutableMap.<String, List<Object>>of(
+                "year", ImmutableList.<Object>of("2012"),
+                "monthOfYear", ImmutableList.<Object>of("12"));
+        FluentRecipe recipe = FluentRecipe.compile(DateTime.class, FluentStyle.PROPERTIES, null, "toDateTime", steps);
+
+        DateTime dateTime = (DateTime) recipe.create();
+
+        assertEquals(2012, dateTime.getYear());
+        assertEquals(12, dateTime.getMonthOfYear());
+    }
+
+    public void shouldCreateObjectsConcurrently() throws Exception {
+        Map<String, List<Object>> steps = ImmutableMap.<String, List<Object>>of(
+                "append", ImmutableList.<Object>of("Hello", " World"));
+        final FluentRecipe recipe = FluentRecipe.compile(TestResettableStringBuilder.class, FluentStyle.METHODS,
+                null, null, steps).withBuilderPool("reset", 2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = Lists.newArrayList();
+            for (int i = 0; i < 1000; i++) {
+                results.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return recipe.create();
+                    }
+                }));
+            }
+            for (Future<Object> result : results) {
+                assertEquals("Hello World", result.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = BeanInstantiationException.class)
+    public void shouldReportFailingBuildMethod() {
+        FluentRecipe.compile(FailingBuilder.class, FluentStyle.PROPERTIES, null, null, null).create();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectReferencesWithoutBeanFactory() {
+        Map<String, List<Object>> steps = ImmutableMap.<String, List<Object>>of(
+                "append", ImmutableList.<Object>of(new RuntimeBeanReference("exclamation")));
+        FluentRecipe.compile(TestResettableStringBuilder.class, FluentStyle.METHODS, null, null, steps);
+    }
+
+    public static class FailingBuilder {
+
+        public Object build() {
+            throw new IllegalStateException("Incomplete");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.springframework.beans;
+
+import org.joda.time.DateTime;
+import org.stuartgunter.spring.beans.factory.xml.TestStringBuilder;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationTargetException;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class InvocationEngineTest {
+
+    @DataProvider
+    public Object[][] engines() {
+        return new Object[][] {
+                { InvocationEngine.REFLECTION },
+                { InvocationEngine.METHOD_HANDLE }
+        };
+    }
+
+    @Test(dataProvider = "engines")
+    public void shouldInvokeFluentMethod(InvocationEngine engine) throws Exception {
+        TestStringBuilder builder = new TestStringBuilder();
+        FluentMethodInvoker invoker = engine.bindFluentMethod(
+                TestStringBuilder.class.getMethod("withBody", String.class));
+
+        assertSame(builder, invoker.invoke(builder, "body"));
+    }
+
+    @Test(dataProvider = "engines")
+    public void shouldInvokeFluentMethodWithPrimitiveArgument(InvocationEngine engine) throws Exception {
+        FluentMethodInvoker invoker = engine.bindFluentMethod(DateTime.class.getMethod("withYear", int.class));
+
+        DateTime unboxed = (DateTime) invoker.invokeInt(new DateTime(0), 2012);
+        DateTime boxed = (DateTime) invoker.invoke(new DateTime(0), 2012);
+
+        assertEquals(2012, unboxed.getYear());
+        assertEquals(2012, boxed.getYear());
+    }
+
+    @Test(dataProvider = "engines")
+    public void shouldInvokeBuildMethod(InvocationEngine engine) throws Exception {
+        TestStringBuilder builder = new TestStringBuilder().withPrefix("a").withBody("b").withSuffix("c");
+        BuildMethodInvoker invoker = engine.bindBuildMethod(TestStringBuilder.class.getMethod("build"));
+
+        assertEquals("abc", invoker.invoke(builder));
+    }
+
+    @Test(dataProvider = "engines")
+    public void shouldInvokeMethodOfNonPublicClass(InvocationEngine engine) throws Exception {
+        NonPublicBuilder builder = new NonPublicBuilder();
+        FluentMethodInvoker invoker = engine.bindFluentMethod(
+                NonPublicBuilder.class.getMethod("withValue", String.class));
+
+        assertSame(builder, invoker.invoke(builder, "value"));
+        assertEquals("value", builder.value);
+    }
+
+    @Test(dataProvider = "engines", expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectIncompatibleArgument(InvocationEngine engine) throws Exception {
+        FluentMethodInvoker invoker = engine.bindFluentMethod(DateTime.class.getMethod("withYear", int.class));
+
+        invoker.invoke(new DateTime(0), "2012");
+    }
+
+    @Test(dataProvider = "engines")
+    public void shouldWrapExceptionThrownByMethod(InvocationEngine engine) throws Exception {
+        FluentMethodInvoker invoker = engine.bindFluentMethod(DateTime.class.getMethod("withMonthOfYear", int.class));
+
+        try {
+            invoker.invokeInt(new DateTime(0), 13);
+        }
+        catch (InvocationTargetException ex) {
+            assertTrue(ex.getCause() instanceof IllegalArgumentException);
+            return;
+        }
+        throw new AssertionError("Expected InvocationTargetException");
+    }
+
+    static class NonPublicBuilder {
+
+        String value;
+
+        public NonPublicBuilder withValue(String value) {
+            this.value = value;
+            return this;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package org.stuartgunter.spring.beans.factory.xml;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.joda.time.DateTime;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.beans.factory.parsing.BeanDefinitionParsingException;
 import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
 import org.springframework.context.support.GenericXmlApplicationContext;
@@ -9,8 +13,31 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
 
 @Test
 public class BuilderFactoryBeanTest {
@@ -52,6 +79,14 @@ public class BuilderFactoryBeanTest {
         assertEquals("Hello World!", bean);
     }
 
+    public void shouldResolveBuilderNamedByPlaceholdersAtRuntime() {
+        loadBeanDefinitions("placeholder-bean-factory.xml");
+
+        final Object bean = applicationContext.getBean("testBean");
+
+        assertEquals("Hello World!", bean);
+    }
+
     public void shouldCreateBeanUsingFluentMethods() {
         loadBeanDefinitions("fluent-method-bean-factory.xml");
 
@@ -61,6 +96,12 @@ public class BuilderFactoryBeanTest {
         assertEquals("Hello World!", bean);
     }
 
+    public void shouldApplyInterleavedFluentMethodsInDeclaredOrder() {
+        loadBeanDefinitions("fluent-method-bean-factory.xml");
+
+        assertEquals("abc", applicationContext.getBean("interleavedTestBean"));
+    }
+
     public void shouldCreateImmutableBeanUsingFluentMethods() {
         loadBeanDefinitions("immutable-bean-factory.xml");
 
@@ -77,6 +118,312 @@ public class BuilderFactoryBeanTest {
         assertEquals(expected, bean);
     }
 
+    public void shouldResolvePrototypeReferencesForEveryInstance() {
+        loadBeanDefinitions("prototype-bean-factory.xml");
+
+        final String first = applicationContext.getBean("testBean", String.class);
+        final String second = applicationContext.getBean("testBean", String.class);
+
+        assertFalse(applicationContext.isSingleton("testBean"));
+        assertFalse(first.equals(second));
+        assertTrue(first.matches("Hello\\d+!"));
+        assertTrue(second.matches("Hello\\d+!"));
+    }
+
+    public void shouldCreatePrototypesConcurrently() throws Exception {
+        loadBeanDefinitions("prototype-bean-factory.xml");
+        final int threadCount = 32;
+        final int beansPerThread = 500;
+        final Set<String> beans = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> results = Lists.newArrayList();
+            for (int i = 0; i < threadCount; i++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int j = 0; j < beansPerThread; j++) {
+                            String bean = applicationContext.getBean("testBean", String.class);
+                            assertTrue(bean, bean.matches("Hello\\d+!"));
+                            beans.add(bean);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threadCount * beansPerThread, beans.size());
+    }
+
+    public void shouldBuildLazilyOnFirstUse() {
+        TestGreeterBuilder.BUILD_COUNT.set(0);
+        loadBeanDefinitions("lazy-bean-factory.xml");
+
+        final TestGreeter bean = applicationContext.getBean("testBean", TestGreeter.class);
+
+        assertEquals(0, TestGreeterBuilder.BUILD_COUNT.get());
+        assertEquals("Hello", bean.greet());
+        assertEquals("Hello", bean.greet());
+        assertEquals(1, TestGreeterBuilder.BUILD_COUNT.get());
+    }
+
+    public void shouldNotBuildFinalTypeLazily() {
+        try {
+            loadBeanDefinitions("invalid-lazy-bean-factory.xml");
+            fail("Expected BeanCreationException");
+        }
+        catch (BeanCreationException ex) {
+            assertEquals("testBean", ex.getBeanName());
+            assertTrue(ex.getMessage(), ex.getMessage().contains("Cannot proxy the final type java.lang.String"));
+        }
+    }
+
+    public void shouldReuseBuilderWithResetMethod() {
+        loadBeanDefinitions("pooled-bean-factory.xml");
+        TestResettableStringBuilder.INSTANCE_COUNT.set(0);
+
+        assertEquals("Hello!", applicationContext.getBean("testBean"));
+        assertEquals("Hello!", applicationContext.getBean("testBean"));
+        assertEquals("Hello!", applicationContext.getBean("testBean"));
+        assertEquals(1, TestResettableStringBuilder.INSTANCE_COUNT.get());
+    }
+
+    public void shouldStreamValuesFromResource() {
+        loadBeanDefinitions("stream-bean-factory.xml");
+
+        assertEquals("> Hello World!", applicationContext.getBean("testBean"));
+        assertEquals("> Hello World!", applicationContext.getBean("testBean"));
+        assertEquals("onetwothree!", applicationContext.getBean("delimitedTestBean"));
+        assertEquals("onetwothree!", applicationContext.getBean("terminatedTestBean"));
+    }
+
+    public void shouldBuildNestedBuilderFactoriesInline() {
+        loadBeanDefinitions("nested-bean-factory.xml");
+
+        assertEquals("<Hello World!>", applicationContext.getBean("testBean"));
+        assertEquals(1, applicationContext.getBeanNamesForType(BuilderFactoryBean.class).length);
+    }
+
+    @Test(expectedExceptions = BeanDefinitionParsingException.class)
+    public void shouldNotCreateBeanWithUnsupportedNestedAttribute() {
+        loadBeanDefinitions("invalid-nested-bean-factory.xml");
+    }
+
+    public void shouldShareInternedBeansAcrossDefinitionsAndContexts() {
+        loadBeanDefinitions("interned-bean-factory.xml");
+        GenericXmlApplicationContext otherApplicationContext =
+                new GenericXmlApplicationContext("classpath:interned-bean-factory.xml");
+        try {
+            final DateTime bean = applicationContext.getBean("testBean", DateTime.class);
+
+            assertEquals(2012, bean.getYear());
+            assertSame(bean, applicationContext.getBean("otherTestBean"));
+            assertSame(bean, otherApplicationContext.getBean("testBean"));
+            assertEquals(bean, applicationContext.getBean("uninternedTestBean"));
+            assertNotSame(bean, applicationContext.getBean("uninternedTestBean"));
+        }
+        finally {
+            otherApplicationContext.close();
+        }
+    }
+
+    public void shouldNotShareInternedBeansBuiltWithDifferentFluentMethods() {
+        loadBeanDefinitions("interned-bean-factory.xml");
+        DateTime marchBean = applicationContext.getBean("marchTestBean", DateTime.class);
+        DateTime thirdBean = applicationContext.getBean("thirdTestBean", DateTime.class);
+
+        assertNotSame(marchBean, thirdBean);
+        assertEquals(3, marchBean.getMonthOfYear());
+        assertEquals(3, thirdBean.getDayOfMonth());
+    }
+
+    public void shouldRebuildOnlyAffectedRefreshableBeans() {
+        loadBeanDefinitions("refreshable-bean-factory.xml");
+        RefreshablePlaceholderConfigurer configurer = applicationContext.getBean(RefreshablePlaceholderConfigurer.class);
+        TestGreeter bean = applicationContext.getBean("testBean", TestGreeter.class);
+        TestGreeter unaffectedBean = applicationContext.getBean("unaffectedBean", TestGreeter.class);
+        assertEquals("Hello World", bean.greet());
+
+        Properties properties = new Properties();
+        properties.setProperty("someKey", "Goodbye");
+        properties.setProperty("streamResource", "stream-values.txt");
+        TestGreeterBuilder.BUILD_COUNT.set(0);
+
+        assertEquals(Collections.singleton("testBean"), configurer.refresh(properties));
+        assertEquals(1, TestGreeterBuilder.BUILD_COUNT.get());
+        assertSame(bean, applicationContext.getBean("testBean"));
+        assertEquals("Goodbye World", bean.greet());
+        assertEquals("stream-values.txt", unaffectedBean.greet());
+        assertTrue(configurer.refresh(properties).isEmpty());
+    }
+
+    public void shouldExposeStatisticsViaJmx() throws Exception {
+        loadBeanDefinitions("statistics-bean-factory.xml");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.stuartgunter.spring.beans:type=BuilderFactoryBean,name=\"testBean\"");
+
+        applicationContext.getBean("testBean");
+        applicationContext.getBean("testBean");
+
+        assertEquals(2L, server.getAttribute(objectName, "BuildCount"));
+        assertEquals(6L, server.getAttribute(objectName, "FluentInvocationCount"));
+        assertEquals(3L, server.getAttribute(objectName, "ReferenceResolutionCount"));
+        assertEquals(4L, server.getAttribute(objectName, "MethodDiscoveryCount"));
+
+        applicationContext.close();
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    public void shouldKeepStatisticsOfContextsWithSameBeanNamesApart() throws Exception {
+        loadBeanDefinitions("statistics-bean-factory.xml");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.stuartgunter.spring.beans:type=BuilderFactoryBean,name=\"testBean\"");
+        ObjectName pattern = new ObjectName("org.stuartgunter.spring.beans:type=BuilderFactoryBean,name=\"testBean\",*");
+
+        GenericXmlApplicationContext otherApplicationContext =
+                new GenericXmlApplicationContext("classpath:statistics-bean-factory.xml");
+        try {
+            assertEquals(2, server.queryNames(pattern, null).size());
+            applicationContext.getBean("testBean");
+
+            assertEquals(1L, server.getAttribute(objectName, "BuildCount"));
+        }
+        finally {
+            otherApplicationContext.close();
+        }
+        assertTrue(server.isRegistered(objectName));
+        assertEquals(1, server.queryNames(pattern, null).size());
+    }
+
+    public void shouldApplyTemplatePropertiesBeforeOwnProperties() {
+        loadBeanDefinitions("template-bean-factory.xml");
+
+        assertEquals("Hello World!", applicationContext.getBean("testBean"));
+        assertEquals("Hello There!", applicationContext.getBean("otherTestBean"));
+        assertEquals(String.class, applicationContext.getType("otherTestBean"));
+    }
+
+    @Test(expectedExceptions = BeanDefinitionParsingException.class)
+    public void shouldNotCreateBeanOverridingTemplateBuilder() {
+        loadBeanDefinitions("invalid-template-bean-factory.xml");
+    }
+
+    @Test(expectedExceptions = BeanDefinitionParsingException.class)
+    public void shouldNotCreateBeanWithoutReplicas() {
+        loadBeanDefinitions("invalid-replicated-bean-factory.xml");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectNegativeReplicas() {
+        new BuilderFactoryBean().setReplicas(-1);
+    }
+
+    public void shouldCreateReplicasWithTheirIndex() {
+        loadBeanDefinitions("replicated-bean-factory.xml");
+
+        assertEquals(List.class, applicationContext.getType("testBean"));
+        assertEquals(Lists.newArrayList("Hello shard 0!", "Hello shard 1!", "Hello shard 2!"),
+                applicationContext.getBean("testBean", List.class));
+        assertEquals(Lists.newArrayList("shard 2", "shard 3"), applicationContext.getBean("codePointBean", List.class));
+    }
+
+    @Test(timeOut = 10000)
+    public void shouldResolveReferencesBeforeBuildingReplicasConcurrently() {
+        applicationContext.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof BuilderFactoryBean) {
+                    ((BuilderFactoryBean) bean).setReplicaParallelism(3);
+                }
+                return bean;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean;
+            }
+        });
+        loadBeanDefinitions("replicated-bean-factory.xml");
+
+        assertEquals(Lists.newArrayList("Hello shard 0?", "Hello shard 1?", "Hello shard 2?"),
+                applicationContext.getBean("referringBean", List.class));
+    }
+
+    public void shouldBuildAsynchronously() throws Exception {
+        loadBeanDefinitions("async-bean-factory.xml");
+
+        assertEquals(ListenableFuture.class, applicationContext.getType("testBean"));
+        final ListenableFuture<?> future = applicationContext.getBean("testBean", ListenableFuture.class);
+        final Object bean = future.get(5, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(bean), String.valueOf(bean).startsWith("Hello from builder-factory-async-"));
+        assertEquals("Hello", applicationContext.getBean("proxyBean", TestGreeter.class).greet());
+    }
+
+    public void shouldShareAsyncThreadsUntilContextIsClosed() {
+        loadBeanDefinitions("async-bean-factory.xml");
+        AsyncBuildExecutors executors = AsyncBuildExecutors.acquire(applicationContext.getBeanFactory());
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) executors.getExecutor();
+        try {
+            // every asynchronous factory of the context submitted its build to the same threads
+            assertEquals(5, executor.getTaskCount());
+            applicationContext.close();
+            assertFalse(executor.isShutdown());
+        }
+        finally {
+            executors.release();
+        }
+        assertTrue(executor.isShutdown());
+        assertTrue(executors.getTimeoutScheduler().isShutdown());
+    }
+
+    public void shouldFailAsynchronousBuildThatThrowsError() throws Exception {
+        loadBeanDefinitions("async-bean-factory.xml");
+
+        try {
+            applicationContext.getBean("failingBean", ListenableFuture.class).get(5, TimeUnit.SECONDS);
+            fail("Expected the build to fail");
+        }
+        catch (ExecutionException ex) {
+            assertTrue(String.valueOf(ex.getCause()), ex.getCause() instanceof Error);
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void shouldResolveReferencesBeforeBuildingAsynchronously() {
+        loadBeanDefinitions("async-reference-bean-factory.xml");
+
+        assertEquals("Hello", applicationContext.getBean("greeting"));
+    }
+
+    public void shouldCompleteTimedOutBuildWithFallback() throws Exception {
+        loadBeanDefinitions("async-bean-factory.xml");
+
+        assertEquals("!", applicationContext.getBean("fallbackBean", ListenableFuture.class).get(5, TimeUnit.SECONDS));
+        try {
+            applicationContext.getBean("timedOutBean", ListenableFuture.class).get(5, TimeUnit.SECONDS);
+            fail("Expected the build to time out");
+        }
+        catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test(expectedExceptions = BeanDefinitionParsingException.class)
+    public void shouldNotCreateBeanWithUnknownSteps() {
+        loadBeanDefinitions("unknown-step-bean-factory.xml");
+    }
+
     @Test(expectedExceptions = BeanDefinitionParsingException.class)
     public void shouldNotCreateBeanWithInvalidConfiguration() {
         loadBeanDefinitions("invalid-bean-factory.xml");
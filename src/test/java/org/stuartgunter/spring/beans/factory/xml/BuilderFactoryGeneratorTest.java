@@ -0,0 +1,122 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import com.google.common.io.Files;
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.FileSystemUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class BuilderFactoryGeneratorTest {
+
+    File outputDirectory;
+    GenericXmlApplicationContext applicationContext;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        outputDirectory = Files.createTempDir();
+        applicationContext = new GenericXmlApplicationContext();
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        applicationContext.close();
+        FileSystemUtils.deleteRecursively(outputDirectory);
+    }
+
+    private void loadBeanDefinitions(String fileName, ClassLoader classLoader) {
+        applicationContext.setClassLoader(classLoader);
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(applicationContext);
+        ClassPathResource resource = new ClassPathResource(fileName);
+        reader.loadBeanDefinitions(resource);
+        applicationContext.refresh();
+    }
+
+    private ClassLoader compile(List<File> sources) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"));
+        boolean compiled = compiler.getTask(null, fileManager, null, options, null,
+                fileManager.getJavaFileObjectsFromFiles(sources)).call();
+        fileManager.close();
+
+        assertTrue(compiled);
+        return new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    public void shouldGenerateFactorySource() {
+        Map<String, String> sources = new BuilderFactoryGenerator()
+                .generateSources("classpath:customised-bean-factory.xml");
+
+        assertEquals(1, sources.size());
+        String source = sources.values().iterator().next();
+        assertTrue(source.contains(".usingPrefix((java.lang.String) values[0])"));
+        assertTrue(source.contains(".construct();"));
+    }
+
+    public void shouldNotGenerateFactoriesForTemplates() {
+        Map<String, String> sources = new BuilderFactoryGenerator()
+                .generateSources("classpath:template-bean-factory.xml");
+
+        assertTrue(sources.isEmpty());
+    }
+
+    public void shouldUseGeneratedFactory() throws Exception {
+        List<File> sources = new BuilderFactoryGenerator()
+                .generate(outputDirectory, "classpath:customised-bean-factory.xml");
+        loadBeanDefinitions("customised-bean-factory.xml", compile(sources));
+
+        assertTrue(applicationContext.getBean("&testBean") instanceof GeneratedBuilderFactoryBean);
+        assertEquals("Hello World!", applicationContext.getBean("testBean"));
+    }
+
+    public void shouldNotUseGeneratedFactoryMissingFromIndex() throws Exception {
+        List<File> sources = new BuilderFactoryGenerator()
+                .generate(outputDirectory, "classpath:customised-bean-factory.xml");
+        ClassLoader classLoader = compile(sources);
+        assertTrue(new File(outputDirectory, GeneratedBuilderFactoryBean.INDEX_LOCATION).delete());
+        loadBeanDefinitions("customised-bean-factory.xml", classLoader);
+
+        assertTrue(applicationContext.getBean("&testBean") instanceof BuilderFactoryBean);
+        assertEquals("Hello World!", applicationContext.getBean("testBean"));
+    }
+
+    public void shouldUseGeneratedFactoryWithPrimitiveArguments() throws Exception {
+        List<File> sources = new BuilderFactoryGenerator()
+                .generate(outputDirectory, "classpath:immutable-bean-factory.xml");
+        loadBeanDefinitions("immutable-bean-factory.xml", compile(sources));
+
+        final DateTime bean = applicationContext.getBean("testBean", DateTime.class);
+
+        assertTrue(applicationContext.getBean("&testBean") instanceof GeneratedBuilderFactoryBean);
+        assertEquals(2012, bean.getYear());
+        assertEquals(12, bean.getMonthOfYear());
+        assertEquals(6, bean.getHourOfDay());
+    }
+
+    public void shouldConvertGenericArgumentsLikeReflectiveFactory() throws Exception {
+        List<File> sources = new BuilderFactoryGenerator()
+                .generate(outputDirectory, "classpath:generic-bean-factory.xml");
+        loadBeanDefinitions("generic-bean-factory.xml", compile(sources));
+
+        assertTrue(applicationContext.getBean("&testBean") instanceof GeneratedBuilderFactoryBean);
+        assertEquals(6, applicationContext.getBean("testBean"));
+    }
+}
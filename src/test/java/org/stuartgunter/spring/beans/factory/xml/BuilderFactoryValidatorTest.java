@@ -0,0 +1,32 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.springframework.beans.factory.parsing.Problem;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class BuilderFactoryValidatorTest {
+
+    public void shouldReportAllProblemsAtOnce() {
+        List<Problem> problems = new BuilderFactoryValidator()
+                .validate("classpath:unknown-step-bean-factory.xml", "classpath:default-bean-factory.xml");
+
+        assertEquals(2, problems.size());
+        String message = problems.get(0).getMessage();
+        assertTrue(message, message.contains("build method 'create' not found"));
+        assertTrue(message, message.contains("no fluent method for 'greeting'"));
+        assertTrue(message, message.contains("no fluent method for 'subject'"));
+        assertTrue(problems.get(1).getMessage(), problems.get(1).getMessage().contains("UnknownBuilder"));
+    }
+
+    public void shouldReportNoProblemsForValidConfiguration() {
+        List<Problem> problems = new BuilderFactoryValidator()
+                .validate("classpath:default-bean-factory.xml", "classpath:template-bean-factory.xml");
+
+        assertTrue(problems.toString(), problems.isEmpty());
+    }
+}
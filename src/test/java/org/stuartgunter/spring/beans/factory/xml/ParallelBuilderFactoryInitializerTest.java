@@ -0,0 +1,148 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import org.joda.time.IllegalFieldValueException;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanCurrentlyInCreationException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+@Test
+public class ParallelBuilderFactoryInitializerTest {
+
+    GenericXmlApplicationContext applicationContext;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        applicationContext = new GenericXmlApplicationContext();
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        applicationContext.close();
+    }
+
+    private void loadBeanDefinitions(String fileName) {
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(applicationContext);
+        ClassPathResource resource = new ClassPathResource(fileName);
+        reader.loadBeanDefinitions(resource);
+        applicationContext.refresh();
+    }
+
+    public void shouldPrebuildBeansAndTheirDependencies() {
+        loadBeanDefinitions("parallel-bean-factory.xml");
+
+        assertEquals("Hello World!", applicationContext.getBean("testBean"));
+        assertEquals(" World", applicationContext.getBean("bodyBean"));
+    }
+
+    public void shouldPrebuildBeansOnSeparateThreads() {
+        loadBeanDefinitions("parallel-bean-factory.xml");
+
+        final String bean = applicationContext.getBean("threadBean", String.class);
+
+        assertTrue(bean, bean.startsWith("built by builder-factory-prebuild-"));
+    }
+
+    public void shouldGiveDependentsThePostProcessedObjects() {
+        applicationContext.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                return bean;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof TestGreeter)) {
+                    return bean;
+                }
+                final TestGreeter greeter = (TestGreeter) bean;
+                return new TestGreeter() {
+                    @Override
+                    public String greet() {
+                        return "[" + greeter.greet() + "]";
+                    }
+                };
+            }
+        });
+        loadBeanDefinitions("parallel-post-processed-bean-factory.xml");
+
+        assertEquals("[Hello World]", applicationContext.getBean("greeterBean", TestGreeter.class).greet());
+        assertEquals("[[Hello World]!]", applicationContext.getBean("testBean", TestGreeter.class).greet());
+        assertEquals("[[[Hello World]!]!]",
+                applicationContext.getBean("triggerDependentBean", TestGreeter.class).greet());
+    }
+
+    public void shouldNotPrebuildRefreshableBeans() {
+        loadBeanDefinitions("parallel-refreshable-bean-factory.xml");
+        TestGreeter bean = applicationContext.getBean("dependentBean", TestGreeter.class);
+        assertEquals("Hello World!", bean.greet());
+
+        Properties properties = new Properties();
+        properties.setProperty("someKey", "Goodbye");
+        applicationContext.getBean(RefreshablePlaceholderConfigurer.class).refresh(properties);
+
+        assertEquals("Goodbye World!", bean.greet());
+    }
+
+    public void shouldInternPrebuiltBeans() {
+        loadBeanDefinitions("parallel-interned-bean-factory.xml");
+
+        assertSame(applicationContext.getBean("testBean"), applicationContext.getBean("otherTestBean"));
+    }
+
+    public void shouldRecordStatisticsOfPrebuiltBeans() throws Exception {
+        loadBeanDefinitions("parallel-statistics-bean-factory.xml");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        assertEquals("Hello World!", applicationContext.getBean("testBean", TestGreeter.class).greet());
+        for (String beanName : new String[] {"testBean", "greeterBean"}) {
+            ObjectName objectName = new ObjectName(
+                    "org.stuartgunter.spring.beans:type=BuilderFactoryBean,name=\"" + beanName + "\"");
+            assertEquals(1L, server.getAttribute(objectName, "BuildCount"));
+            assertEquals(1L, server.getAttribute(objectName, "FluentInvocationCount"));
+        }
+    }
+
+    public void shouldDetectCircularReferences() {
+        try {
+            loadBeanDefinitions("parallel-cyclic-bean-factory.xml");
+            fail("Expected BeanCreationException");
+        } catch (BeanCreationException ex) {
+            assertTrue(ex.contains(BeanCurrentlyInCreationException.class));
+        }
+    }
+
+    public void shouldPropagateBuildFailures() {
+        try {
+            loadBeanDefinitions("parallel-failing-bean-factory.xml");
+            fail("Expected BeanCreationException");
+        } catch (BeanCreationException ex) {
+            assertTrue(ex.contains(IllegalFieldValueException.class));
+        }
+    }
+
+    public void shouldFailRejectedBuildsInsteadOfWaitingForThem() {
+        try {
+            loadBeanDefinitions("parallel-rejected-bean-factory.xml");
+            fail("Expected BeanCreationException");
+        } catch (BeanCreationException ex) {
+            assertTrue(ex.contains(RejectedExecutionException.class));
+        }
+    }
+}
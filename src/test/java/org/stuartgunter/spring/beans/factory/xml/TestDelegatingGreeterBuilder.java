@@ -0,0 +1,21 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+public class TestDelegatingGreeterBuilder {
+
+    private TestGreeter delegate;
+
+    public TestDelegatingGreeterBuilder withDelegate(TestGreeter delegate) {
+        this.delegate = delegate;
+        return this;
+    }
+
+    public TestGreeter build() {
+        final TestGreeter delegate = this.delegate;
+        return new TestGreeter() {
+            @Override
+            public String greet() {
+                return delegate.greet() + "!";
+            }
+        };
+    }
+}
@@ -0,0 +1,6 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+public interface TestGreeter {
+
+    String greet();
+}
@@ -0,0 +1,26 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestGreeterBuilder {
+
+    static final AtomicInteger BUILD_COUNT = new AtomicInteger();
+
+    private String greeting;
+
+    public TestGreeterBuilder withGreeting(String greeting) {
+        this.greeting = greeting;
+        return this;
+    }
+
+    public TestGreeter build() {
+        BUILD_COUNT.incrementAndGet();
+        final String greeting = this.greeting;
+        return new TestGreeter() {
+            @Override
+            public String greet() {
+                return greeting;
+            }
+        };
+    }
+}
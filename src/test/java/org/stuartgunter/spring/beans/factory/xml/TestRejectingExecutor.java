@@ -0,0 +1,12 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class TestRejectingExecutor implements Executor {
+
+    @Override
+    public void execute(Runnable command) {
+        throw new RejectedExecutionException("Executor is saturated");
+    }
+}
@@ -0,0 +1,27 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestResettableStringBuilder {
+
+    public static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+    private final StringBuilder value = new StringBuilder();
+
+    public TestResettableStringBuilder() {
+        INSTANCE_COUNT.incrementAndGet();
+    }
+
+    public TestResettableStringBuilder append(String value) {
+        this.value.append(value);
+        return this;
+    }
+
+    public void reset() {
+        this.value.setLength(0);
+    }
+
+    public String build() {
+        return this.value.toString();
+    }
+}
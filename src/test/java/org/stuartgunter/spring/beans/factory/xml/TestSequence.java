@@ -0,0 +1,15 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class TestSequence {
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private TestSequence() {
+    }
+
+    public static String next() {
+        return String.valueOf(COUNTER.incrementAndGet());
+    }
+}
@@ -0,0 +1,22 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+public class TestSlowBuilder {
+
+    private long delay;
+    private String result;
+
+    public TestSlowBuilder withDelay(long delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    public TestSlowBuilder withResult(String result) {
+        this.result = result;
+        return this;
+    }
+
+    public String build() throws InterruptedException {
+        Thread.sleep(delay);
+        return result;
+    }
+}
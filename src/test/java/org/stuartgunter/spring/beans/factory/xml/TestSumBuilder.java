@@ -0,0 +1,21 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+import java.util.List;
+
+public class TestSumBuilder {
+
+    private List<Integer> numbers;
+
+    public TestSumBuilder withNumbers(List<Integer> numbers) {
+        this.numbers = numbers;
+        return this;
+    }
+
+    public Integer build() {
+        int sum = 0;
+        for (Integer number : numbers) {
+            sum += number;
+        }
+        return sum;
+    }
+}
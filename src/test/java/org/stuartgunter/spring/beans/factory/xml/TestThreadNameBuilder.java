@@ -0,0 +1,15 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+public class TestThreadNameBuilder {
+
+    private String prefix;
+
+    public TestThreadNameBuilder withPrefix(String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    public String build() {
+        return prefix + Thread.currentThread().getName();
+    }
+}
@@ -0,0 +1,15 @@
+package org.stuartgunter.spring.beans.factory.xml;
+
+public class TestUninitializableBuilder {
+
+    // fails the initialization of the class, so that instantiating the builder throws an Error
+    private static final Object VALUE = failInitialization();
+
+    private static Object failInitialization() {
+        throw new IllegalStateException("This builder cannot be initialised");
+    }
+
+    public String build() {
+        return String.valueOf(VALUE);
+    }
+}